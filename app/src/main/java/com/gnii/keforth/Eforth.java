@@ -27,6 +27,7 @@ public class Eforth extends Thread {
     private static Handler      hndl;
     private static IO           io;
     private static VM           vm;
+    private static boolean      ticking = false;     ///< idle round posted (fibers, timers)
 
     private final JavaCallback  main;
     private final Esystem       sys;
@@ -46,6 +47,7 @@ public class Eforth extends Thread {
         if (USE_JNI_FORTH == 0) {
             io = new IO(name, System.in, sys.out);   /// * create IO handlers
             vm = new VM(io, main);                   /// * create Forth VM instance
+            Cache.dir(sys.cacheDir());               /// * include cache, app private
             io.mstat();                              /// * display memory usage
         }
         Looper.prepare();                        /// * create thread MessageQueue
@@ -61,12 +63,22 @@ public class Eforth extends Thread {
                     while (io.readline()) {      /// * fetch line-by-line
                         if (!vm.outer()) break;  /// * call Java Forth outer interpreter
                     }
+                    if (!ticking) {              /// * keep fibers and timers running between commands
+                        ticking = true;
+                        hndl.post(Eforth::tick);
+                    }
                 } else jniOuter(cmd);            /// * call JNI Forth outer interpreter
             }
         };
         Looper.loop();
     }
 
+    private static void tick() {                 ///< one idle round, then wait for next due
+        long ns = vm.idle();
+        ticking = ns >= 0;
+        if (ticking) hndl.postDelayed(Eforth::tick, ns / 1_000_000);
+    }
+
     public void process(String cmd) {            ///< Forth VM 
         Message msg = Message.obtain();
         msg.what = MSG_TYPE_STR;
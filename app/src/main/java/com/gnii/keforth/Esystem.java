@@ -6,6 +6,8 @@ package com.gnii.keforth;
 
 import static android.content.Context.*;
 
+import java.io.File;
+
 /// file loader
 import android.view.View;
 import android.annotation.SuppressLint;
@@ -42,6 +44,10 @@ public class Esystem {
         this.out  = out;
     }
 
+    public File cacheDir() {                         ///< app private, for the include cache
+        return new File(main.getCacheDir(), "keforth");
+    }
+
     public String sensorList() {
         StringBuilder sb = new StringBuilder();
         for (Sensor s : smgr.getSensorList(Sensor.TYPE_ALL)) {
@@ -6,7 +6,7 @@ package com.gnii.keforth;
 
 public interface JavaCallback {
     public enum PostType {
-        LOG, DEBUG, PRINT, FORTH, JAVA
+        LOG, DEBUG, PRINT, FORTH, JAVA, PROF
     }
     void onPost(PostType tid, String msg);
 }
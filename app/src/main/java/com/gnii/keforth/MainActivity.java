@@ -103,6 +103,7 @@ public class MainActivity extends AppCompatActivity implements JavaCallback {
         case PRINT:  out.print(msg);         break;
         case FORTH:  forth.process(msg);     break;
         case JAVA:   handleJavaAPI(msg);     break;
+        case PROF:                           break;  /// * profile-report csv, printed already
         default:     out.debug("unsupported tid="+tid+"\n");
         }
     }
@@ -0,0 +1,197 @@
+///
+/// @file
+/// @brief - Cache class - replay compiled includes from a cache directory
+///
+package com.gnii.keforth.eforth;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+///
+///> include/included check the cache first: an entry keyed by the file's path
+///  holds the content hashes of the file and of everything it included, the
+///  SHA-256 of the dictionary it was compiled against (every user word as
+///  imaged, data space, base), the output it printed and an Image delta of the
+///  words it added; if all still match, the delta and output are replayed
+///  instead of compiling again. Only definitions are cached: a file whose top
+///  level runs other words (see DEFS), or that leaves other traces (stack,
+///  errors, tasks, timers, changes to older words), is compiled every time
+///  the cache is off unless the host names a directory of its own (Main -c,
+///  the app's cache dir); entries are trusted code, never share the directory
+///    entry: "KEFC" version src_hash dict_hash n { path hash } output | Image body
+///
+public class Cache {
+    static final int MAGIC   = 0x4b454643;          ///< "KEFC"
+    static final int VERSION = 2;
+    static final HashSet<String> DEFS = new HashSet<>(Arrays.asList(  ///< core words run at top level
+        ":", "variable", "constant", "create", ",", "allot", "cells", "here", "@", "!", "+!",
+        "immediate", "decimal", "hex", "include", "included",
+        "(", "\\", ".(", ".\"", "s\"", "cr"));
+    static final HashSet<String> SYS  = new HashSet<>(Arrays.asList(  ///< immediate, not compile-only
+        "dir", "cd", "pwd"));
+    static volatile File dir = null;                ///< off until the host sets a private dir
+
+    public static void dir(File d) { dir = d; }     ///< e.g. Main -c, the app's cache dir
+
+    static class Rec {                              ///< include being recorded
+        final Rec     up;
+        final FV<String> deps = new FV<>();         ///< path, hash, path, hash ...
+        boolean defs = true;                        ///< only definitions run so far
+        Rec(Rec up) { this.up = up; }
+    }
+    ///
+    ///> include file fn through the cache
+    ///
+    static void include(VM vm, String fn) {
+        File f = new File(fn);
+        byte[] src;
+        try { src = Files.readAllBytes(f.toPath()); }
+        catch (IOException e) { vm.io.err(e); return; }
+        String path = f.getAbsolutePath(), hash = sha(src);
+        for (Rec r = vm.rec; r != null; r = r.up) {  /// * dependency of enclosing includes
+            r.deps.add(path);
+            r.deps.add(hash);
+        }
+        File   c   = dir == null || vm.compile ? null : entry(path);
+        Dict   d   = vm.dict;
+        int    n0  = d.size(), ss0 = vm.ss.size(), err0 = vm.io.nerr;
+        int    id0 = Task.seq.get(), isr0 = vm.isr.ent.size();
+        String old = c == null ? null : fingerprint(vm, n0);   /// * once, key and check
+        if (old != null && replay(vm, c, hash, old)) return;
+
+        int[]  mem0 = old == null ? null : Arrays.copyOf(d.mem, d.hp);  /// * hashed if saved
+        StringBuilder out0 = vm.io.rec;
+        vm.io.rec = new StringBuilder();
+        vm.rec    = new Rec(vm.rec);
+        try { vm.io.load(new ByteArrayInputStream(src), vm::outer); }
+        finally {
+            String out = vm.io.rec.toString();
+            Rec    r   = vm.rec;
+            vm.rec    = r.up;
+            vm.io.rec = out0;
+            if (out0 != null) out0.append(out);
+            boolean same = old != null && r.defs && vm.dict == d && d.size() >= n0
+                && vm.ss.size() == ss0 && vm.io.nerr == err0 && !vm.compile
+                && Task.seq.get() == id0 && vm.isr.ent.size() == isr0
+                && old.equals(fingerprint(vm, n0));           /// * older words untouched
+            if (same) save(vm, c, hash, key(old, mem0, mem0.length), r, out, n0);
+        }
+    }
+    ///
+    ///> outer interpreter runs w while an include is recorded; anything but a
+    ///  definition (a core word in DEFS, a pure primitive, a variable or
+    ///  constant, or an immediate core word while compiling) keeps it and its
+    ///  includers out of the cache
+    ///
+    static void exec(VM vm, Code w) {
+        Dict    d    = vm.dict;
+        boolean core = d.shared(w.token) && d.get(w.token) == w;
+        boolean ok   = vm.compile
+            ? core && w.immd && !SYS.contains(w.name)
+            : core
+            ? DEFS.contains(w.name) || (w.token < VM.pure.length && VM.pure[w.token] > 0)
+            : w.xt == null && w.pf.size() == 1                /// * data word, pushes only
+              && (w.pf.head().xt == VM._dovar || w.pf.head().xt == VM._dolit);
+        if (!ok) for (Rec r = vm.rec; r != null; r = r.up) r.defs = false;
+    }
+    static boolean replay(VM vm, File c, String hash, String old) {
+        if (!c.exists()) return false;
+        try (FileChannel fc = FileChannel.open(c.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            if (b.getInt() != MAGIC || b.getInt() != VERSION || !hash.equals(str(b))) return false;
+            Dict d = vm.dict;                       /// * data space hashed only now
+            if (!key(old, d.mem, d.hp).equals(str(b))) return false;
+            for (int n=b.getInt(); n > 0; n--) {     /// * nested includes unchanged?
+                File   f = new File(str(b));
+                String h = str(b);
+                if (!f.exists() || !h.equals(sha(Files.readAllBytes(f.toPath())))) return false;
+            }
+            String out = str(b);
+            Image.body(vm, b, vm.dict);
+            vm.SETV(0, vm.dict.mem[0]);
+            if (!out.isEmpty()) vm.io.pstr(out);
+            return true;
+        }
+        catch (Exception e) { return false; }       /// * unreadable, compile instead
+    }
+    static void save(VM vm, File c, String hash, String pre, Rec r, String out, int from) {
+        File t = null;
+        try {
+            if (!dir.isDirectory() && dir.mkdirs()) {    /// * owner only
+                dir.setReadable(false, false);   dir.setReadable(true, true);
+                dir.setWritable(false, false);   dir.setWritable(true, true);
+                dir.setExecutable(false, false); dir.setExecutable(true, true);
+            }
+            t = File.createTempFile(c.getName(), ".tmp", dir);  /// * unique, VMs may race
+            try (DataOutputStream o = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(t)))) {
+                o.writeInt(MAGIC);
+                o.writeInt(VERSION);
+                str(o, hash);
+                str(o, pre);
+                o.writeInt(r.deps.size() / 2);
+                for (String s : r.deps) str(o, s);
+                str(o, out);
+                Image.body(o, vm.dict, from);
+            }
+            if (!t.renameTo(c)) t.delete();
+        }
+        catch (Exception e) { if (t != null) t.delete(); }  /// * e.g. xt not imageable, skip
+    }
+    ///
+    ///> keys and hashes
+    ///
+    static File entry(String path) {
+        return new File(dir, sha(path.getBytes(StandardCharsets.UTF_8)).substring(0, 32) + ".kfc");
+    }
+    static String fingerprint(VM vm, int to) {      ///< SHA-256 of words below to
+        Dict d = vm.dict;                           ///< as imaged, null if not imageable
+        IdentityHashMap<Code, Integer> ids = new IdentityHashMap<>();
+        for (int i=0; i < d.fence; i++) ids.put(d.core.get(i), i);
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (DataOutputStream o = new DataOutputStream(b)) {
+            o.writeInt(Image.core_hash());
+            o.writeInt(to);
+            for (int i=0; i < d.fence; i++) {       /// * core words made private
+                if (d.shared(i)) continue;
+                o.writeInt(i);
+                Image.node(o, d.get(i), ids);
+            }
+            for (int i=d.fence; i < to; i++) Image.node(o, d.get(i), ids);
+        }
+        catch (IOException e) { return null; }     /// * e.g. xt not imageable, no cache
+        return sha(b.toByteArray());
+    }
+    static String key(String words, int[] mem, int hp) {    ///< entry key: words, data space
+        byte[]     w = words.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(w.length + 4 + hp * 4);
+        b.put(w).putInt(hp);
+        b.asIntBuffer().put(mem, 0, hp);
+        return sha(b.array());
+    }
+    static String sha(byte[] b) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(b);
+            StringBuilder s = new StringBuilder();
+            for (byte x : h) s.append(String.format("%02x", x));
+            return s.toString();
+        }
+        catch (Exception e) { return Integer.toHexString(Arrays.hashCode(b)); }
+    }
+    static void str(DataOutputStream o, String s) throws IOException { Image.str(o, s); }
+    static String str(ByteBuffer b) { return Image.str(b); }
+}
@@ -0,0 +1,89 @@
+///
+/// @file
+/// @brief - Chan class - bounded lock-free queue of int batches (task mailbox)
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+///
+///> multi-producer/multi-consumer ring with per-slot sequence numbers,
+///  a slot is claimed by CAS on head/tail, published by its sequence
+///
+public class Chan {
+    static final int SZ   = 64;            ///< default capacity, in batches
+    static final int SPIN = 64;            ///< busy retries before yielding
+
+    final int[][]         buf;             ///< batches, visible via seq
+    final AtomicLongArray seq;             ///< slot sequence numbers
+    final int             mask;
+    final AtomicLong      head = new AtomicLong(0);   ///< next slot to take
+    final AtomicLong      tail = new AtomicLong(0);   ///< next slot to fill
+
+    Chan()       { this(SZ); }
+    Chan(int sz) {
+        int n = Integer.highestOneBit(Math.max(sz, 2) - 1) << 1;  /// * power of 2
+        buf  = new int[n][];
+        seq  = new AtomicLongArray(n);
+        mask = n - 1;
+        for (int i=0; i < n; i++) seq.set(i, i);
+    }
+    ///
+    ///> non-blocking ops
+    ///
+    boolean offer(int[] v) {               ///< false if full
+        long p = tail.get();
+        while (true) {
+            int  i = (int)p & mask;
+            long d = seq.get(i) - p;
+            if (d == 0) {
+                if (tail.compareAndSet(p, p + 1)) {
+                    buf[i] = v;
+                    seq.set(i, p + 1);     /// * publish
+                    return true;
+                }
+                p = tail.get();
+            }
+            else if (d < 0) return false;  /// * full
+            else p = tail.get();           /// * lost the race, retry
+        }
+    }
+    int[] poll() {                         ///< null if empty
+        long p = head.get();
+        while (true) {
+            int  i = (int)p & mask;
+            long d = seq.get(i) - (p + 1);
+            if (d == 0) {
+                if (head.compareAndSet(p, p + 1)) {
+                    int[] v = buf[i];
+                    buf[i] = null;
+                    seq.set(i, p + mask + 1);  /// * free for next lap
+                    return v;
+                }
+                p = head.get();
+            }
+            else if (d < 0) return null;   /// * empty
+            else p = head.get();
+        }
+    }
+    boolean isEmpty() { return head.get() == tail.get(); }
+    ///
+    ///> blocking ops, spin then park; a stop request (VM.halt) breaks the wait
+    ///
+    void put(VM vm, int[] v) {
+        for (int k=0; !offer(v); k++) idle(vm, k, () -> tail.get() - head.get() <= mask);
+    }
+    int[] take(VM vm) {
+        int[] v;
+        for (int k=0; (v = poll()) == null; k++) idle(vm, k, () -> !isEmpty());
+        return v;
+    }
+    static void idle(VM vm, int k, BooleanSupplier ok) {
+        if (vm.halt) throw Task.STOP;
+        if      (k < SPIN)     { /* busy retry */ }
+        else if (k < SPIN * 2) Thread.yield();
+        else Task.block(() -> vm.halt || ok.getAsBoolean());  /// * 50us polls, no lost wakeups
+    }
+}
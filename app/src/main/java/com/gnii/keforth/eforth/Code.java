@@ -4,104 +4,124 @@
 ///
 package com.gnii.keforth.eforth;
 
-import java.util.Stack;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 
 public class Code {
-    static int fence = 0;                  ///< token index
-
     String  name;
     boolean immd  = false;
     int     token = 0;
     int     stage = 0;
+    int     calls = 0;                     ///< invocation count, for JIT
     
-    Consumer<Code> xt = null;              ///< execution token
+    BiConsumer<VM, Code> xt = null;        ///< execution token (shared by all VMs)
     FV<Code>       pf = new FV<>();        ///< if..pf..
     FV<Code>       p1 = new FV<>();        ///< else..p1..then
     FV<Code>       p2 = new FV<>();        ///< aft..next
-    FV<Integer>    qf = new FV<>();        ///< variable storage
+    int            val= 0;                 ///< literal value
+    int            here = 0;               ///< data space pointer when defined
     String         str= null;              ///< string storage
+    int[]          tc = null;              ///< threaded code (see TC)
+    Code[]         tn = null;              ///< tree nodes referenced by tc, pdo: its do..loop
+    JIT.Word       jit= null;              ///< JVM compiled tc (see JIT)
+    Code           link = null;            ///< next in Dict name index bucket
     ///
     ///> constructors
     ///
-    Code(String n, Consumer<Code> f, boolean im) {                           ///< built-in words
-        name=n; xt=f; immd=im; token=fence++;
+    Code(String n, BiConsumer<VM, Code> f, boolean im) {                     ///< built-in words
+        name=n; xt=f; immd=im;
     }             
-    Code(String n) { name=n; token=fence++; }                                ///< colon words
-    Code(Consumer<Code> f, String n)            { name=n; xt=f; }            ///< branching nodes
-    Code(Consumer<Code> f, String n, int d)     { name=n; xt=f; qf.add(d); } ///< int literal
-    Code(Consumer<Code> f, String n, String s)  { name=n; xt=f; str=s; }     ///< string literal
+    Code(String n) { name=n; }                                               ///< colon words
+    Code(BiConsumer<VM, Code> f, String n)           { name=n; xt=f; }       ///< branching nodes
+    Code(BiConsumer<VM, Code> f, String n, int d)    { name=n; xt=f; val=d; } ///< int literal
+    Code(BiConsumer<VM, Code> f, String n, String s) { name=n; xt=f; str=s; } ///< string literal
+    Code(Code w) {                                                           ///< private copy
+        name=w.name; xt=w.xt; immd=w.immd; token=w.token; stage=w.stage;
+        pf=w.pf; p1=w.p1; p2=w.p2; val=w.val; str=w.str; tc=w.tc; tn=w.tn; here=w.here;
+    }
     ///
     ///> attribute setting
     ///
     Code immediate()           { immd=true; return this; }
-    ///
-    ///> variable storage management methods
-    ///
-    void comma(int v)          { pf.head().qf.add(v);        }
-    void set_var(int i, int v) { pf.head().qf.set(i, v);     }
-    int  get_var(int i)        { return pf.head().qf.get(i); }
+    void deopt()               { jit=null; calls=0;      }  ///< back to interpreter
     ///
     ///> inner interpreter
+    ///  exit/leave set vm.unnest, enclosing loops stop at once and the
+    ///  flag is consumed by the innermost counted loop or word boundary
     ///
-    void nest() {
-        if (xt != null) { xt.accept(this); return; }
-        for (Code w : pf) {
-            try   { w.nest(); }
-            catch (ArithmeticException e) { break; } ///* capture UNNEST
+    void nest(VM vm) {
+        if (xt != null) {
+            vm.met.prims++;
+            if (vm.prof != null) vm.prof.prim(vm, this); else xt.accept(vm, this);
+            return;
         }
+        vm.met.words++;
+        if (vm.prof != null) { vm.prof.run(vm, this); return; }
+        body(vm);
     }
-    void nest(FV<Code> pf) {
-        for (Code w : pf) w.nest();
+    void body(VM vm) {                             ///< colon word, Code tree
+        vm.unnest = false;                         /// * nothing pending on entry
+        nest(vm, pf);
+        vm.unnest = false;                         /// * unnest stops at word boundary
+    }
+    boolean nest(VM vm, FV<Code> pf) {             ///< false if unnested
+        if (vm.halt) throw Task.STOP;              /// * once per body/loop pass
+        for (int i=0, n=pf.size(); i < n; i++) {   /// * indexed, no Iterator
+            pf.get(i).nest(vm);
+            if (vm.unnest) return false;
+        }
+        return true;
     }
-    void unnest() { throw new ArithmeticException(); }
     ///
     ///> branching, looping methods
     ///
-    void branch(Stack<Integer> ss) {
-        for (Code w : ss.pop() != 0 ? pf : p1) w.nest();
+    void branch(VM vm) {
+        nest(vm, vm.ss.pop() != 0 ? pf : p1);
     }
-    void begin(Stack<Integer> ss) {
-        int b = stage;
+    void begin(VM vm) {
+        Stk ss = vm.ss;
+        int b  = stage;
         while (true) {
-            nest(pf);                              /// * begin..
+            if (!nest(vm, pf)) return;             /// * begin..
             if (b==0 && ss.pop() != 0) break;      /// * ..until
             if (b==1)                  continue;   /// * ..again
             if (b==2 && ss.pop() == 0) break;      /// * ..while..repeat
-            nest(p1);
+            if (!nest(vm, p1)) return;
         }
     }
-    void dofor(Stack<Integer> rs) {
+    void dofor(VM vm) {
+        Stk rs = vm.rs;
         try {
             int i, b = stage;
             do {
-                nest(pf);                          ///> for..
+                if (!nest(vm, pf)) return;         ///> for..
                 if (b > 0) break;                  ///> ..aft..
-                i = rs.pop();                      ///> decrement i (expensive)
-                rs.push(--i);
+                rs.poke(i = rs.peek() - 1);        ///> decrement i (in place)
             } while (i >= 0);
             while (b > 0) {
-                nest(p2);
-                i = rs.pop();
-                rs.push(--i);
+                if (!nest(vm, p2)) return;
+                rs.poke(i = rs.peek() - 1);
                 if (i < 0) break;
-                nest(p1);
+                if (!nest(vm, p1)) return;
             }
         }
-        catch (Exception e) { /* leave */ }
-        finally { rs.pop(); }                      ///> pop off index
+        finally {
+            vm.unnest = false;                     ///> leave stops here
+            rs.pop();                              ///> pop off index
+        }
     }
-    void loop(Stack<Integer> rs) {                 ///> do..loop
+    void loop(VM vm) {                             ///> do..loop
+        Stk rs = vm.rs;
+        int i, m = rs.pop();
         try {
-            int i, m = rs.pop();
             while (true) {
-                nest(pf);
-                i = rs.pop();
-                rs.push(++i);
+                if (!nest(vm, pf)) return;         /// * LEAVE
+                rs.poke(i = rs.peek() + 1);
                 if (i >= m) break;
             }
         }
-        catch (Exception e) { /* leave */ }        /// handle LEAVE
-        finally { rs.pop(); }
+        finally {
+            vm.unnest = false;
+            rs.pop();
+        }
     }
 }
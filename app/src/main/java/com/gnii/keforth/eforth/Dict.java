@@ -4,30 +4,128 @@
 ///
 package com.gnii.keforth.eforth;
 
+import java.util.Arrays;
+
 final public class Dict extends FV<Code> {
-    static Dict dict = new Dict();
+    static final int HASH_SZ = 256;                     ///< initial index buckets
+    static final int MEM_SZ  = 1024;                    ///< initial data space cells
+
+    final Dict core;                                    ///< shared built-in words (null in core)
+    final int  fence;                                   ///< words [0, fence) come from core
+    Code[] hx = new Code[HASH_SZ];                      ///< name index, newest first in bucket
+    int    nx = 0;                                      ///< number of words indexed
+    int[]  mem= new int[MEM_SZ];                        ///< data space, cell 0 keeps base
+    int    hp = 1;                                      ///< here, next free cell
     
-    static Dict get_instance() { return dict; }         ///< singleton
+    Dict() { core = null; fence = 0; }                  ///< core, built once (see VM.CORE)
+    Dict(Dict c) {                                      ///< private layer on top of core
+        core  = c;
+        fence = c.size();
+        addAll(c);                                      /// * share core words, no copy
+    }
     ///
     ///> create dictionary with given word list
     ///
+    @Override
+    public boolean add(Code w) {
+        w.token = size();                               ///< token is dictionary index
+        w.here  = hp;                                   ///< data space mark for forget
+        super.add(w);
+        index(w);
+        return true;
+    }
+    boolean shared(int i) {                             ///< word i still belongs to core
+        return i < fence && get(i) == core.get(i);
+    }
+    Code own(int i) {                                   ///< copy-on-write before changing word i
+        if (!shared(i)) return get(i);
+        return shadow(i, new Code(get(i)));
+    }
+    Code shadow(int i, Code w) {                        ///< private w in place of core word i
+        w.token = i;
+        set(i, w);
+        index(w);                                       /// * shadows the core one
+        return w;
+    }
+    @Override
+    FV<Code> drop() {                                   ///< drop tail (e.g. branch temp)
+        unindex(tail());
+        return super.drop();
+    }
     void forget(int t) {
-        dict.subList(t, dict.size()).clear();           ///> forget words
+        for (int i=size()-1; i >= t; i--) {             /// * newest first
+            Code w = get(i);
+            w.deopt();
+            unindex(w);
+        }
+        if (t < size()) {                               ///> release data space
+            int h = get(t).here;
+            Arrays.fill(mem, h, hp, 0);
+            hp = h;
+        }
+        subList(t, size()).clear();                     ///> forget words
     }
     ///
-    ///> memory access "macros"
+    ///> name index - hash buckets chained through Code.link, so a
+    ///  redefinition shadows older words of the same name until forgotten;
+    ///  a private dictionary indexes its own words only, then asks core
     ///
-    int  idx() {                                               ///< current dictionary index
-        return ((tail().pf.size() - 1) << 16) | tail().token;
+    int  bucket(String n) { return n.hashCode() & (hx.length - 1); }
+    int  bucket(char[] b, int i, int n) {                 ///< same hash as String.hashCode
+        int h = 0;
+        for (int e = i + n; i < e; i++) h = 31 * h + b[i];
+        return h & (hx.length - 1);
     }
-    int  getv(int i_w)        {                                ///< get var at i_w 
-        return get(i_w & 0x7fff).get_var(i_w >> 16);
+    void index(Code w) {
+        if (w.name.isEmpty()) return;                   /// * skip branching temps
+        int h = bucket(w.name);
+        w.link = hx[h];
+        hx[h]  = w;
+        if (++nx > hx.length * 2) rehash();
     }
-    void setv(int i_w, int n) {                                ///< set var at i_w
-        get(i_w & 0x7fff).set_var(i_w >> 16, n);
+    void unindex(Code w) {
+        if (w.name.isEmpty()) return;
+        int h = bucket(w.name);
+        if (hx[h] == w) hx[h] = w.link;                 /// * newest, the usual case
+        else {
+            for (Code p = hx[h]; p != null; p = p.link) {
+                if (p.link == w) { p.link = w.link; break; }
+            }
+        }
+        w.link = null;
+        nx--;
     }
-    String gets(int i_w) {                                     ///< get string stored at i_w
-        return get(i_w & 0x7fff).pf.get(i_w >> 16).str;        ///> return a string
+    void rehash() {
+        hx = new Code[hx.length * 2];
+        nx = 0;
+        for (int i=0; i < size(); i++) {                /// * oldest first, newest ends on top
+            if (!shared(i)) index(get(i));
+        }
+    }
+    ///
+    ///> data space access, plain cell addresses
+    ///
+    int  allot(int n) {                                        ///< reserve n cells, return address
+        int a = hp;
+        if (n < 0) Arrays.fill(mem, hp + n, hp, 0);            /// * release, keep zeroed
+        else if (hp + n > mem.length) mem = Arrays.copyOf(mem, Math.max(mem.length * 2, hp + n));
+        hp += n;
+        return a;
+    }
+    void comma(int v)         { mem[allot(1)] = v;           } ///< append a cell
+    int  getv(int a)          { return mem[a];               } ///< get cell at a
+    void setv(int a, int n)   { mem[a] = n;                  } ///< set cell at a
+    void fill(int a, int n, int v) { Arrays.fill(mem, a, a + n, v);           }
+    void move(int a, int b, int n) { System.arraycopy(mem, a, mem, b, n);     }
+    int  puts(String s) {                                      ///< store string, one char a cell
+        int a = allot(s.length());
+        for (int i=0; i < s.length(); i++) mem[a + i] = s.charAt(i);
+        return a;
+    }
+    String gets(int a, int n) {                                ///< get string stored at a
+        char[] s = new char[n];
+        for (int i=0; i < n; i++) s[i] = (char)mem[a + i];
+        return new String(s);
     }
     ///
     ///> find - Forth dictionary search 
@@ -35,12 +133,22 @@ final public class Dict extends FV<Code> {
     ///    @return    Code found; null - if not found
     ///
     Code find(String n, boolean compile)  {
-        for (int i=dict.size()-(compile ? 2 : 1); i>=0; i--) { // search array from tail to head
-            Code w = dict.get(i); 
-            if (n.equals(w.name)) return w;
+        Code t = compile ? tail() : null;               ///< word being defined is hidden
+        for (Code w = hx[bucket(n)]; w != null; w = w.link) {
+            if (w != t && n.equals(w.name)) return w;
+        }
+        return core != null ? core.find(n, false) : null;
+    }
+    Code find(char[] b, int i, int n, boolean compile) {  ///< find by token slice (no String)
+        Code t = compile ? tail() : null;
+        for (Code w = hx[bucket(b, i, n)]; w != null; w = w.link) {
+            if (w == t || w.name.length() != n) continue;
+            int k = 0;
+            while (k < n && w.name.charAt(k) == b[i + k]) k++;
+            if (k == n) return w;
         }
-        return null;
+        return core != null ? core.find(b, i, n, false) : null;
     }
-    Code compile(Code w) { dict.tail().pf.add(w); return w; }
-    Code bran()          { return dict.tail(2).pf.tail();   }
+    Code compile(Code w) { tail().pf.add(w); return w;      }
+    Code bran()          { return tail(2).pf.tail();        }
 }
@@ -0,0 +1,109 @@
+///
+/// @file
+/// @brief - Fiber class - cooperative tasks sharing one VM thread
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.locks.LockSupport;
+
+///
+///> a fiber is a colon word with its own stacks and threaded call frames,
+///  run round-robin by the VM that spawned it, switching only at pause/ms
+///    ' w fiber ( -- f )   pause   n ms   f kill
+///  note: a fiber yields only from threaded code it runs itself; inside
+///        JIT-compiled, Code tree or execute'd words pause/ms take effect
+///        at the next yield point back in its own threaded code
+///
+public class Fiber {
+    final int  id;
+    Code       w;                          ///< word being run
+    int        ip   = 0;                   ///< resume point in w.tc, -1 when done
+    Stk        ss   = new Stk(16);         ///< data stack
+    Stk        rs   = new Stk(16);         ///< return stack
+    Code[]     rw   = new Code[16];        ///< threaded call frames - word
+    int[]      ri   = new int[16];         ///< threaded call frames - return ip
+    int        rp   = 0;
+    long       wake = 0;                   ///< System.nanoTime() to resume at
+    boolean    dead = false;               ///< killed
+
+    Fiber(Code w) {
+        this.id = Task.seq.incrementAndGet();    /// * one id space with tasks
+        this.w  = w;
+    }
+    ///
+    ///> run until next pause/ms or completion, on the fiber's own stacks
+    ///
+    void resume(VM vm) {
+        Stk    s0 = vm.ss, r0 = vm.rs;
+        Code[] w0 = vm.rw;
+        int[]  i0 = vm.ri;
+        int    p0 = vm.rp;
+        vm.ss = ss; vm.rs = rs; vm.rw = rw; vm.ri = ri; vm.rp = rp;
+        vm.fib   = this;
+        vm.pause = false;
+        int at = ip;
+        ip = -1;                                /// * set again by a yield
+        try                  { vm.inner(w, at, true); }
+        catch (Task.Stop e)  { dead = true; throw e;  }     /// * task VM stopped
+        catch (Exception e)  { dead = true; vm.io.err(e); }
+        finally {
+            rw = vm.rw; ri = vm.ri;             /// * frames may have grown
+            vm.ss = s0; vm.rs = r0; vm.rw = w0; vm.ri = i0; vm.rp = p0;
+            vm.fib = null;
+        }
+    }
+    boolean done() { return dead || ip < 0; }
+    ///
+    ///> scheduler, returns ns until the next fiber is due, -1 if none left
+    ///
+    static long round(VM vm) {
+        long now = System.nanoTime(), due = -1;
+        for (int i=0; i < vm.fq.size(); ) {
+            Fiber f = vm.fq.get(i);
+            if (!f.done() && f.wake - now <= 0) f.resume(vm);   /// * may spawn or kill fibers
+            if (f.done()) { vm.fq.remove(f); continue; }
+            long d = Math.max(f.wake - System.nanoTime(), 0);
+            if (due < 0 || d < due) due = d;
+            i++;
+        }
+        return due;
+    }
+    ///
+    ///> fiber words
+    ///
+    static int spawn(VM vm, int t) {                         ///< ( w -- f )
+        Code w = vm.dict.get(t);
+        if (w.tc == null) { vm.io.pstr(w.name + " not a threaded colon word? "); return 0; }
+        Fiber f = new Fiber(w);
+        vm.fq.add(f);
+        return f.id;
+    }
+    static void pause(VM vm) {
+        if (vm.fib != null) vm.pause = true;                 /// * switch at next yield
+        else round(vm);                                      /// * main line, run others once
+    }
+    static void ms(VM vm, int n) {
+        long end = System.nanoTime() + n * 1_000_000L;
+        if (vm.fib != null) {                                /// * park fiber
+            vm.fib.wake = end;
+            vm.pause    = true;
+            return;
+        }
+        for (long t; (t = end - System.nanoTime()) > 0; ) {  /// * main line, run fibers meanwhile
+            long d = vm.idle();                              /// * and timer interrupts
+            if (d < 0 || d > t) d = t;
+            if (d > 0) LockSupport.parkNanos(d);
+            if (Thread.interrupted()) { Thread.currentThread().interrupt(); return; }
+            if (vm.halt) throw Task.STOP;
+        }
+    }
+    static void kill(VM vm, int id) {
+        for (Fiber f : vm.fq) {
+            if (f.id != id) continue;
+            if (f == vm.fib) vm.pause = true;                /// * self, finish at next yield
+            f.dead = true;
+            return;
+        }
+        vm.io.pstr("fiber " + id + "? ");
+    }
+}
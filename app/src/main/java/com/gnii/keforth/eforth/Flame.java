@@ -0,0 +1,84 @@
+///
+/// @file
+/// @brief - Flame class - sampling profiler, collapsed stacks for flame graphs
+///
+package com.gnii.keforth.eforth;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+///
+///> a daemon thread reads the VM's shadow call stack (Prof.cs) every period
+///  and counts each distinct chain; nothing is timed on the VM thread, so
+///  primitives cost what they always do and show up in their caller
+///    n flame-on ( sample every n us, 0 = 1ms )   flame-off   flame-dump file
+///  file holds one "outer;inner;sq 42" line per chain, as taken by
+///  flamegraph.pl, speedscope, etc.; samples at the outer interpreter
+///  (no colon word running) are not kept
+///
+public class Flame implements Runnable {
+    final Prof    p;
+    final long    ns;                              ///< sampling period
+    final Thread  th;
+    final HashMap<String, long[]> hits = new HashMap<>();  ///< "t;t;t" to count
+    volatile boolean on = true;
+    long    n = 0, idle = 0;                       ///< samples taken, none running
+
+    Flame(Prof p, long ns) {
+        this.p  = p;
+        this.ns = ns;
+        th = new Thread(this, "eforth-flame");
+        th.setDaemon(true);
+        th.start();
+    }
+    public void run() {
+        StringBuilder k = new StringBuilder();
+        while (on) {
+            LockSupport.parkNanos(ns);
+            int   d  = p.csp;                      /// * volatile read, then frames
+            int[] cs = p.cs;
+            d = Math.min(d, cs.length);
+            k.setLength(0);
+            for (int i=0; i < d; i++) {
+                if (i > 0) k.append(';');
+                k.append(cs[i]);
+            }
+            synchronized (hits) {
+                n++;
+                if (d == 0) idle++;
+                else hits.computeIfAbsent(k.toString(), x -> new long[1])[0]++;
+            }
+        }
+    }
+    void stop() {
+        on = false;
+        LockSupport.unpark(th);
+    }
+    ///
+    ///> write collapsed stacks, names resolved on the VM thread
+    ///
+    void dump(VM vm, String fn) {
+        if (fn == null) { vm.io.pstr("flame-dump file? "); return; }
+        try (Writer o = new FileWriter(fn)) {
+            long m, z;
+            synchronized (hits) {
+                for (Map.Entry<String, long[]> e : hits.entrySet()) {
+                    StringBuilder s = new StringBuilder();
+                    for (String t : e.getKey().split(";")) {
+                        int i = Integer.parseInt(t);
+                        if (s.length() > 0) s.append(';');
+                        s.append(i < vm.dict.size() ? vm.dict.get(i).name : "?" + i);
+                    }
+                    o.write(s.append(' ').append(e.getValue()[0]).append('\n').toString());
+                }
+                m = n; z = idle;
+            }
+            vm.io.pstr(fn + ": " + m + " samples, " + z + " idle\n");
+        }
+        catch (IOException e) { vm.io.err(e); }
+    }
+}
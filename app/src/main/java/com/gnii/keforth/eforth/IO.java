@@ -11,32 +11,65 @@ import java.io.OutputStream;
 import java.io.FileInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
-import java.util.regex.Pattern;
-import java.util.Scanner;
-import java.util.Stack;
+import java.util.Map;
 import java.util.function.Function;
 
 ///
 ///> console input/output
 ///
 public class IO {
-    private static final boolean DEBUG         = false;
+    static  final boolean DEBUG         = false;
     private static final int     CHARS_PER_ROW = 40;
+    private static final int     TIB_SZ        = 256;      ///< initial line buffer size
     enum OP { CR, BL, EMIT, DOT, UDOT, DOTR, UDOTR }
+    ///
+    ///> line source, block-buffered so lines are read without allocation
+    ///
+    static class In implements AutoCloseable {
+        final Reader rd;
+        final char[] buf = new char[4096];
+        int          p   = 0, n = 0;                        ///< read pointer, chars in buf
+
+        In(Reader r)      { rd = r; }
+        In(InputStream i) { this(new InputStreamReader(i)); }
+        In(String s)      { this(new StringReader(s)); }
+        int peek() throws IOException {                     ///< next char, -1 on EOF
+            if (p == n) {
+                n = rd.read(buf, 0, buf.length); p = 0;
+                if (n <= 0) { n = 0; return -1; }
+            }
+            return buf[p];
+        }
+        int read() throws IOException {
+            int c = peek();
+            if (c >= 0) p++;
+            return c;
+        }
+        @Override public void close() throws IOException { rd.close(); }
+    }
 
     String        name;
-    FV<Scanner>   ins = new FV<>();                         ///< input scanner stack
-    Scanner       tok = null;                               ///< tokenizer (from in Scanner)
+    FV<In>        ins = new FV<>();                         ///< input source stack
+    char[]        tib = new char[TIB_SZ];                   ///< terminal input buffer (line)
+    int           ntib= 0;                                  ///< chars in tib
+    int           tp  = 0;                                  ///< parse pointer into tib (>in)
+    int           ts  = 0, tl = 0;                          ///< last token slice (start, length)
     OutputStream  out;                                      ///< Stream Output
     String        pad;                                      ///< tmp storage
 //    String        dir0= null;                               ///< root directory
     StringBuffer  wd;                                       ///< working directory
+    StringBuilder rec = null;                               ///< output copy, while caching an include
+    int           nerr= 0;                                  ///< errors reported
 
     public IO(String n, InputStream i, OutputStream o) {
         name = n;                                           ///< name of the system (for mstat)
-        ins.add(new Scanner(i));                            ///< stackup input streams
+        ins.add(new In(i));                                 ///< stackup input streams
         out  = o;
         wd   = new StringBuffer();                          ///< working directory
     }
@@ -55,39 +88,63 @@ public class IO {
         pstr(str);
     }
     public void rescan(String s) {                          ///< update input stream
-        Scanner sc = new Scanner(s);
-        ins.set(ins.size() - 1, sc);
+        ins.set(ins.size() - 1, new In(s));
     }
-    public boolean readline() {
-        String tib = null;
-        tok = ins.tail().hasNextLine()                      ///< create tokenizer
-            ? new Scanner(tib=ins.tail().nextLine()) : null;
-        if (tib!=null && load_depth() > 0) debug(tib+"\n"); ///< echo if needed
-        return tok != null;
+    public boolean readline() {                             ///< fill tib with next line
+        In  in  = ins.tail();
+        int c   = -1;
+        ntib = tp = tl = 0;
+        try {
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') break;
+                if (c == '\r') {                            /// * \r\n or lone \r
+                    if (in.peek() == '\n') in.read();
+                    break;
+                }
+                if (ntib == tib.length) tib = Arrays.copyOf(tib, ntib * 2);
+                tib[ntib++] = (char)c;
+            }
+        }
+        catch (IOException e) { err(e); }
+        if (c < 0 && ntib == 0) return false;               /// * end of input
+        if (DEBUG && load_depth() > 0) debug(new String(tib, 0, ntib)+"\n"); ///< echo if needed
+        return true;
+    }
+    static boolean ws(char c) { return Character.isWhitespace(c); }
+    int token() {                                           ///< next token into (ts, tl), 0 at end of line
+        while (tp < ntib && ws(tib[tp])) tp++;
+        ts = tp;
+        while (tp < ntib && !ws(tib[tp])) tp++;
+        return tl = tp - ts;
     }
+    String idiom() { return new String(tib, ts, tl); }     ///< last token as string
     String next_token() {                                   ///< fetch next token from in stream
-        return tok.hasNext() ? tok.next() : null;
+        return token() > 0 ? idiom() : null;
     }   
-    String scan(String delim) {
-        Pattern d = tok.delimiter();                        ///< keep delimiter (SPC)
-        tok.useDelimiter(delim); pad = next_token();        /// * read to delimiter (into pad)
-        tok.useDelimiter(d);     next_token();              /// * restore and skip off delim
-        return pad==null ? null : (pad=pad.substring(1));   /// * drop first char (a SPC)
+    String scan(char delim) {                               ///< read to delim (into pad)
+        if (tp >= ntib) return pad = null;
+        int i = ++tp;                                       /// * skip the SPC after word
+        while (tp < ntib && tib[tp] != delim) tp++;
+        pad = new String(tib, i, tp - i);
+        if (tp < ntib) tp++;                                /// * skip off delim
+        return pad;
     }
     ///
     ///> IO methods
     ///
     public void pstr(String s) {
+        if (rec != null) rec.append(s);
         try { out.write(s.getBytes(), 0, s.length()); }
         catch (Exception e) { err(e); }
     }
     public void pchr(int n) {
+        if (rec != null) rec.append((char)n);
         try { out.write(n); }
         catch (Exception e) { err(e); }
     }
     public void debug(String s)  { if (DEBUG) pstr(s);  }
-    public void err(Exception e) { e.printStackTrace(); }
-    int    key() { return (int)next_token().charAt(0); }
+    public void err(Exception e) { nerr++; e.printStackTrace(); }
+    int    key() { return token() > 0 ? (int)tib[ts] : 0; }
     String pad() { return pad; }
     String itoa(int n, int base) { return Integer.toString(n, base); }
     void spaces(int n) {
@@ -140,9 +197,11 @@ public class IO {
     }
     int load_depth() { return ins.size() - 1; }             /// * depth or recursive loading
     int load(InputStream st, BooleanSupplier outer) {
-        Scanner tok0 = tok;                                 ///< backup tokenizer
+        char[] tib0 = tib;                                  ///< backup rest of current line
+        int    n0   = ntib, p0 = tp;
         int i = 0;
-        try (Scanner sc = new Scanner(st)) {                ///< auto-close scanner
+        tib = new char[TIB_SZ];
+        try (In sc = new In(st)) {                          ///< auto-close input
             ins.add(sc);                                    /// * switch input stream
             while (readline()) {                            /// * load from file now
                 i++;
@@ -153,7 +212,7 @@ public class IO {
         finally {
             ins.drop();                                     /// * restore input stream
         }
-        tok = tok0;
+        tib = tib0; ntib = n0; tp = p0;                     /// * restore tokenizer
         return i;                                           /// return line loaded
     }
     int load(String fn, BooleanSupplier outer) {
@@ -170,8 +229,8 @@ public class IO {
     ///
     ///> Debug ops
     ///
-    void ss_dump(Stack<Integer> ss, int base) {             /// ok
-        for (int n : ss) pstr(itoa(n, base)+" ");
+    void ss_dump(Stk ss, int base) {                        /// ok
+        for (int i=0; i < ss.size(); i++) pstr(itoa(ss.get(i), base)+" ");
     }
     void words(Dict dict) {
         int i=0, sz = 0; 
@@ -182,6 +241,17 @@ public class IO {
         }
         cr();
     }
+    void pairs(VM vm, int n) {                              ///< opcode pairs seen at ';'
+        FV<Map.Entry<Long, Integer>> lst = new FV<>();
+        lst.addAll(vm.pairs.entrySet());
+        lst.sort((x, y) -> y.getValue() - x.getValue());    /// * most frequent first
+        for (int i=0; i < Math.min(n, lst.size()); i++) {
+            long k = lst.get(i).getKey();
+            int  a = (int)(k >> 32), b = (int)k;
+            pstr(String.format("%8d %s %s %s\n", lst.get(i).getValue(),
+                TC.fused(vm, a, b) ? "*" : " ", TC.name(vm, a), TC.name(vm, b)));
+        }
+    }
     void see(Code c, int base, int dp) {
         if (c==null) return;
         Consumer<String> tab = s->{
@@ -197,24 +267,23 @@ public class IO {
         if (!c.p2.isEmpty()) {
             tab.accept("( 2-- )");  c.p2.forEach(w -> see(w, base, dp+1));
         }
-        if (!c.qf.isEmpty())  {
-            pstr(" \\ ="); c.qf.forEach(i -> pstr(itoa(i, base)+" "));
-        }
+        if (c.name.equals("lit")) pstr(" \\ ="+itoa(c.val, base)+" ");
+        if (c.name.equals("var")) pstr(" \\ @"+c.token+" ");
         if (c.str != null)  pstr(" \\ =\""+c.str+"\" ");
         if (dp == 0) pstr("\n; ");
     }
-    public String serialize(String fmt, Dict dict, Stack<Integer> ss) {
+    public String serialize(String fmt, Dict dict, Stk ss) {
         Function<Character, String> t2s = (Character c) -> {
             StringBuilder n = new StringBuilder();
             n.setLength(0);  // Clear StringBuilder (equivalent to n.str(""))
             
             switch (c) {
-            case 'd': n.append(ss.pop().toString());                break;
+            case 'd': n.append(ss.pop());                           break;
             case 'f': n.append((float)ss.pop());                    break;
-            case 'x': n.append("0x").append(ss.pop().toString(16)); break;
+            case 'x': n.append("0x").append(itoa(ss.pop(), 16));    break;
             case 's':
                 int len = ss.pop(), i_w = ss.pop();
-                n.append("\"").append(dict.gets(i_w)).append("\""); break;
+                n.append("\"").append(i_w < 0 ? pad : dict.gets(i_w, len)).append("\""); break;
             case 'p':
                 int p1 = ss.pop(), p2 = ss.pop();
                 n.append("p ").append(p1).append(' ').append(p2);   break;
@@ -0,0 +1,188 @@
+///
+/// @file
+/// @brief - Image class - save/restore a VM's user dictionary as a binary file
+///
+package com.gnii.keforth.eforth;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.function.BiConsumer;
+
+///
+///> image layout (big-endian):
+///    "KEFI" version fence core_hash | hp mem[0..hp) | n { word# node } | n { node }
+///  the first section holds core words made private (is, immediate), the second
+///  the user words; a node is REF id, or NODE xt name flags token stage val here
+///  str pf p1 p2 tc tn, with ids given in write order (words already in the
+///  dictionary take 0..from-1) so shared nodes stay shared; threaded code is
+///  restored as saved (words saved without it run on the Code tree), JIT
+///  code rebuilt on demand. Cache uses the body alone for the words
+///  added by an include
+///
+public class Image {
+    static final int MAGIC   = 0x4b454649;          ///< "KEFI"
+    static final int VERSION = 2;
+    static final int REF = 0, NODE = 1;             ///< node tags
+    static final int XT_CORE = 1000;                ///< xt of core word t is XT_CORE + t
+    static final Object[] XT = {                    ///< node xts, by index (append only)
+        VM._tmp, VM._dolit, VM._dostr, VM._dotstr, VM._branch, VM._begin, VM._for,
+        VM._loop, VM._tor, VM._tor2, VM._dovar, VM._pdo, VM._pause, VM._ms,
+        VM._dodoes, VM._unnest
+    };
+    static IdentityHashMap<Object, Integer> xid;    ///< xt to index, built once
+
+    static synchronized IdentityHashMap<Object, Integer> xid() {
+        if (xid != null) return xid;
+        IdentityHashMap<Object, Integer> m = new IdentityHashMap<>();
+        for (int i=VM.CORE.size() - 1; i >= 0; i--) m.put(VM.CORE.get(i).xt, XT_CORE + i);
+        for (int i=0; i < XT.length; i++) m.put(XT[i], i);      /// * node xts first
+        return xid = m;
+    }
+    static int core_hash() {                        ///< core word set fingerprint
+        int h = 0;
+        for (Code w : VM.CORE) h = 31 * h + w.name.hashCode();
+        return h;
+    }
+    ///
+    ///> save
+    ///
+    public static void save(VM vm, String fn) throws IOException {
+        try (DataOutputStream o = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(fn)))) {
+            o.writeInt(MAGIC);
+            o.writeInt(VERSION);
+            o.writeInt(vm.dict.fence);
+            o.writeInt(core_hash());
+            body(o, vm.dict, vm.dict.fence);
+        }
+    }
+    static void body(DataOutputStream o, Dict d, int from) throws IOException {
+        IdentityHashMap<Code, Integer> ids = new IdentityHashMap<>();
+        for (int i=0; i < from; i++) ids.put(i < d.fence ? d.core.get(i) : d.get(i), i);
+        o.writeInt(d.hp);
+        for (int i=0; i < d.hp; i++) o.writeInt(d.mem[i]);
+        int n = 0;
+        for (int i=0; i < d.fence; i++) if (!d.shared(i)) n++;
+        if (from > d.fence) n = 0;                  /// * delta, shadows left as found
+        o.writeInt(n);
+        for (int i=0; n > 0 && i < d.fence; i++) {
+            if (d.shared(i)) continue;
+            o.writeInt(i);
+            node(o, d.get(i), ids);
+        }
+        o.writeInt(d.size() - from);
+        for (int i=from; i < d.size(); i++) node(o, d.get(i), ids);
+    }
+    static void node(DataOutputStream o, Code c, IdentityHashMap<Code, Integer> ids) throws IOException {
+        Integer id = ids.get(c);
+        if (id != null) { o.writeByte(REF); o.writeInt(id); return; }
+        ids.put(c, ids.size());
+        Integer x = c.xt == null ? -1 : xid().get(c.xt);
+        if (x == null) throw new IOException("no image id for xt of " + c.name);
+        o.writeByte(NODE);
+        o.writeInt(x);
+        str(o, c.name);
+        o.writeByte(c.immd ? 1 : 0);
+        o.writeInt(c.token);
+        o.writeInt(c.stage);
+        o.writeInt(c.val);
+        o.writeInt(c.here);
+        o.writeByte(c.str != null ? 1 : 0);
+        if (c.str != null) str(o, c.str);
+        list(o, c.pf, ids);
+        list(o, c.p1, ids);
+        list(o, c.p2, ids);
+        o.writeInt(c.tc == null ? -1 : c.tc.length);    /// * threaded code, as is
+        if (c.tc != null) for (int v : c.tc) o.writeInt(v);
+        o.writeInt(c.tn == null ? -1 : c.tn.length);
+        if (c.tn != null) for (Code t : c.tn) node(o, t, ids);
+    }
+    static void list(DataOutputStream o, FV<Code> l, IdentityHashMap<Code, Integer> ids) throws IOException {
+        o.writeInt(l.size());
+        for (Code c : l) node(o, c, ids);
+    }
+    static void str(DataOutputStream o, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        o.writeInt(b.length);
+        o.write(b);
+    }
+    ///
+    ///> load - map the file, rebuild a private dictionary on VM.CORE, swap it in
+    ///
+    public static void load(VM vm, String fn) throws IOException {
+        ByteBuffer b;
+        try (FileChannel fc = FileChannel.open(Paths.get(fn), StandardOpenOption.READ)) {
+            b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+        if (b.getInt() != MAGIC)   throw new IOException(fn + " not an image");
+        if (b.getInt() != VERSION) throw new IOException(fn + " image version?");
+        if (b.getInt() != VM.CORE.size() || b.getInt() != core_hash())
+            throw new IOException(fn + " built on other core words");
+        body(vm, b, new Dict(VM.CORE));
+    }
+    static void body(VM vm, ByteBuffer b, Dict d) {     ///< d: fresh, or vm.dict for a delta
+        int from = d.size();
+        int hp   = b.getInt();
+        if (hp > d.mem.length) d.mem = new int[hp];
+        b.asIntBuffer().get(d.mem, 0, hp);
+        b.position(b.position() + hp * 4);
+        FV<Code> objs = new FV<>();
+        for (int i=0; i < from; i++) objs.add(i < d.fence ? d.core.get(i) : d.get(i));
+        for (int n=b.getInt(); n > 0; n--) {
+            int i = b.getInt();
+            d.shadow(i, node(b, objs));
+        }
+        for (int n=b.getInt(); n > 0; n--) {
+            Code w = node(b, objs);
+            int  h = w.here;
+            d.add(w);
+            w.here = h;
+        }
+        d.hp = hp;
+        vm.dict = d;                                /// * swap in
+        vm.SETV(0, d.mem[0]);
+    }
+    @SuppressWarnings("unchecked")
+    static Code node(ByteBuffer b, FV<Code> objs) {
+        if (b.get() == REF) return objs.get(b.getInt());
+        int  x = b.getInt();
+        Code c = new Code("");
+        objs.add(c);
+        if (x >= XT_CORE)  c.xt = VM.CORE.get(x - XT_CORE).xt;
+        else if (x >= 0)   c.xt = (BiConsumer<VM, Code>)XT[x];
+        c.name  = str(b);
+        c.immd  = b.get() != 0;
+        c.token = b.getInt();
+        c.stage = b.getInt();
+        c.val   = b.getInt();
+        c.here  = b.getInt();
+        if (b.get() != 0) c.str = str(b);
+        list(b, c.pf, objs);
+        list(b, c.p1, objs);
+        list(b, c.p2, objs);
+        int n = b.getInt();
+        if (n >= 0) { c.tc = new int[n]; b.asIntBuffer().get(c.tc); b.position(b.position() + n * 4); }
+        n = b.getInt();
+        if (n >= 0) {
+            c.tn = new Code[n];
+            for (int i=0; i < n; i++) c.tn[i] = node(b, objs);
+        }
+        return c;
+    }
+    static void list(ByteBuffer b, FV<Code> l, FV<Code> objs) {
+        for (int n=b.getInt(); n > 0; n--) l.add(node(b, objs));
+    }
+    static String str(ByteBuffer b) {
+        byte[] s = new byte[b.getInt()];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+///
+/// @file
+/// @brief - Isr class - timer interrupt service on a hashed timer wheel
+///
+package com.gnii.keforth.eforth;
+
+///
+///> periodic words, mirrors tmisr/timer/.isr of ceforth_task.cpp
+///    ' w n tmisr  ( run w every n ms, 0 removes )   1 timer  ( enable )   .isr
+///  serviced on the VM thread between outer interpreter tokens, during ms
+///  and when the host calls VM.idle(); a late tick runs once and counts
+///  the periods it skipped as missed
+///
+public class Isr {
+    static final int SLOTS = 64;                    ///< wheel size (1ms a slot), power of 2
+    static final int MASK  = SLOTS - 1;
+
+    static class Ent {
+        final Code w;
+        int  period;                                ///< ms
+        long due;                                   ///< ms since t0
+        int  runs = 0;
+        int  miss = 0;                              ///< periods skipped by late service
+        int  late = 0;                              ///< worst lateness, ms
+        Ent  next;                                  ///< slot chain
+        boolean live = true;                        ///< false once replaced or removed
+        Ent(Code w, int p) { this.w = w; this.period = p; }
+    }
+    final Ent[]   slot = new Ent[SLOTS];
+    final FV<Ent> ent  = new FV<>();                ///< live entries, one per word
+    final long t0 = System.nanoTime();
+    long    cur  = 0;                               ///< last tick serviced
+    boolean on   = false;                           ///< timer enabled
+    boolean busy = false;                           ///< no nested service
+
+    long ms() { return (System.nanoTime() - t0) / 1_000_000; }
+    ///
+    ///> wheel ops
+    ///
+    void link(Ent e) {
+        int i = (int)e.due & MASK;
+        e.next  = slot[i];
+        slot[i] = e;
+    }
+    void unlink(Ent e) {
+        int i = (int)e.due & MASK;
+        if (slot[i] == e) { slot[i] = e.next; return; }
+        for (Ent p = slot[i]; p != null; p = p.next) {
+            if (p.next == e) { p.next = e.next; return; }
+        }
+    }
+    void add(Code w, int period) {                  ///< ( w period -- )
+        for (int i=0; i < ent.size(); i++) {
+            Ent e = ent.get(i);
+            if (e.w != w) continue;
+            unlink(e);
+            e.live = false;                         /// * serv may hold it, not rearmed
+            ent.remove(i);
+            break;
+        }
+        if (period <= 0) return;                    /// * 0 removes
+        Ent e = new Ent(w, period);
+        e.due = ms() + period;
+        ent.add(e);
+        link(e);
+    }
+    void enable(boolean f) {
+        if (f && !on) {                             /// * restart all periods from now
+            long t = cur = ms();
+            for (Ent e : ent) { unlink(e); e.due = t + e.period; link(e); }
+        }
+        on = f;
+    }
+    ///
+    ///> service - walk slots up to now, fire expired entries, rearm them
+    ///
+    void serv(VM vm) {
+        long t = ms();
+        if (!on || busy || t <= cur) return;
+        busy = true;
+        try {
+            long from = Math.max(cur + 1, t - MASK);     /// * one lap covers every slot
+            for (long k = from; k <= t; k++) {
+                Ent e = slot[(int)k & MASK];
+                slot[(int)k & MASK] = null;
+                while (e != null) {
+                    Ent nx = e.next;
+                    if (e.due <= t) fire(vm, e, t);
+                    if (e.live) link(e);                    /// * rearm, unless w changed it
+                    e = nx;
+                }
+            }
+            cur = t;
+        }
+        finally { busy = false; }
+    }
+    void fire(VM vm, Ent e, long t) {
+        int d = (int)(t - e.due);
+        if (d > e.late) e.late = d;
+        e.miss += d / e.period;                     /// * skipped, not replayed
+        e.due  += (long)(d / e.period + 1) * e.period;
+        e.runs++;
+        try { vm.call(e.w); }
+        catch (Exception x) { vm.io.err(x); }
+    }
+    long wait_ns() {                                ///< ns until next due, -1 none
+        if (!on || ent.isEmpty()) return -1;
+        long d = Long.MAX_VALUE, t = ms();
+        for (int i=0; i < ent.size(); i++) d = Math.min(d, ent.get(i).due - t);
+        return Math.max(d, 0) * 1_000_000;
+    }
+    void dump(IO io) {                              ///< .isr
+        for (Ent e : ent) {
+            io.pstr(e.w.name + " every " + e.period + "ms runs=" + e.runs
+                    + " missed=" + e.miss + " late=" + e.late + "ms\n");
+        }
+        if (!on) io.pstr("timer off\n");
+    }
+}
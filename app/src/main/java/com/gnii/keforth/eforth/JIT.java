@@ -0,0 +1,374 @@
+///
+/// @file
+/// @brief - JIT class - compiles hot colon words into JVM bytecode
+///
+///   tier 1: threaded code (VM.inner), each call bumps Code.calls
+///   tier 2: once Code.calls hits VM.hot, TC output is translated into a
+///           class of its own (one ClassLoader each, so deopt lets it go)
+///
+///   top stack cells are kept on the JVM operand stack (spilled through
+///   locals into ss at calls and jumps), ALU/stack built-ins are inlined,
+///   and if/begin/for/do become real JVM branches. Runtimes that cannot
+///   define classes (ART) simply stay on tier 1.
+///
+package com.gnii.keforth.eforth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class JIT {
+    public interface Word { void run(VM vm); }      ///< implemented by generated classes
+
+    static final int    HOT  = 1000;                ///< default calls before compiling
+    static final int    KMAX = 8;                   ///< max cells cached on JVM stack
+    static final int    TMP  = 4;                   ///< first temp local (0 this, 1 vm, 2 ss, 3 rs)
+    static final String PKG  = "com/gnii/keforth/eforth/";
+    static final String STK  = PKG + "Stk";
+    static final String JITC = PKG + "JIT";
+    static final String VMD  = "(L" + PKG + "VM;";
+    static int seq = 0;                             ///< class name sequence
+
+    final VM  vm;
+
+    JIT(VM vm) { this.vm = vm; }
+    ///
+    ///> dedicated class loader, one per compiled word
+    ///
+    static class Loader extends ClassLoader {
+        Loader() { super(JIT.class.getClassLoader()); }
+        Class<?> define(String n, byte[] b) { return defineClass(n, b, 0, b.length); }
+    }
+    Word compile(Code w) {
+        if (w.token >= vm.dict.size() || vm.dict.get(w.token) != w) return null;  /// * anonymous, e.g. pdo
+        String n = PKG + "jit/W" + w.token + "_" + seq++;
+        try {
+            byte[] b = new Gen(w, n).build();
+            Class<?> k = new Loader().define(n.replace('/', '.'), b);
+            return (Word)k.getDeclaredConstructor().newInstance();
+        }
+        catch (UnsupportedOperationException e) {   /// * e.g. ART, no JVM classes
+            vm.hot = 0;
+        }
+        catch (Throwable e) {                       /// * stay on threaded code
+            if (IO.DEBUG) vm.io.debug("jit " + w.name + " failed: " + e + "\n");
+        }
+        return null;
+    }
+    ///
+    ///> runtime helpers, public as generated code lives in another loader
+    ///
+    public static Stk  ss(VM vm)                  { return vm.ss; }
+    public static Stk  rs(VM vm)                  { return vm.rs; }
+    public static void prim(VM vm, int t)         { Code c = vm.dict.get(t); c.xt.accept(vm, c); }
+    public static void call(VM vm, int t)         { vm.call(vm.dict.get(t)); }
+    public static void node(VM vm, int t, int i)  { Code c = vm.dict.get(t).tn[i]; c.xt.accept(vm, c); }
+    public static void does(VM vm, int t, int i)  { vm.does(vm.dict.get(t).tn[i]); }
+    public static void halt(VM vm)                { if (vm.halt) throw Task.STOP; }
+    public static int  zeq(int a)                 { return a == 0 ? -1 : 0; }
+    public static int  zlt(int a)                 { return a <  0 ? -1 : 0; }
+    public static int  zgt(int a)                 { return a >  0 ? -1 : 0; }
+    public static int  eq(int a, int b)           { return a == b ? -1 : 0; }
+    public static int  ne(int a, int b)           { return a != b ? -1 : 0; }
+    public static int  lt(int a, int b)           { return a <  b ? -1 : 0; }
+    public static int  gt(int a, int b)           { return a >  b ? -1 : 0; }
+    public static int  ge(int a, int b)           { return a >= b ? -1 : 0; }
+    public static boolean nxt(Stk rs) {             ///< for..next, true to loop
+        int i = rs.peek() - 1;
+        if (i >= 0) { rs.poke(i); return true; }
+        rs.pop();
+        return false;
+    }
+    public static boolean loop(Stk rs) {            ///< do..loop, true to loop
+        int i = rs.peek() + 1;
+        if (i < rs.pick(1)) { rs.poke(i); return true; }
+        rs.pop(); rs.pop();
+        return false;
+    }
+    ///
+    ///> class file generator (version 49, verified by type inference)
+    ///
+    class Gen {
+        final Code    w;
+        final String  name;
+        final int[]   tc;
+        ByteArrayOutputStream cpb = new ByteArrayOutputStream();
+        DataOutputStream      cp  = new DataOutputStream(cpb);
+        HashMap<String, Integer> cpx = new HashMap<>();
+        int      ncp = 1;                           ///< constant pool count
+        byte[]   bc  = new byte[256];               ///< method bytecode
+        int      bp  = 0;
+        int      k   = 0;                           ///< cells cached on JVM stack
+        FV<int[]> fix = new FV<>();                 ///< { jump at, tc target }
+
+        Gen(Code w, String name) { this.w = w; this.name = name; tc = w.tc; }
+        ///
+        ///> constant pool
+        ///
+        int utf8(String s) throws IOException {
+            Integer i = cpx.get("U" + s);
+            if (i != null) return i;
+            cp.writeByte(1); cp.writeUTF(s);
+            cpx.put("U" + s, ncp);
+            return ncp++;
+        }
+        int cls(String n) throws IOException {
+            Integer i = cpx.get("C" + n);
+            if (i != null) return i;
+            int u = utf8(n);
+            cp.writeByte(7); cp.writeShort(u);
+            cpx.put("C" + n, ncp);
+            return ncp++;
+        }
+        int mref(String c, String n, String d) throws IOException {
+            String key = "M" + c + "." + n + d;
+            Integer i = cpx.get(key);
+            if (i != null) return i;
+            int ci = cls(c), ni = utf8(n), di = utf8(d);
+            cp.writeByte(12); cp.writeShort(ni); cp.writeShort(di);
+            int nt = ncp++;
+            cp.writeByte(10); cp.writeShort(ci); cp.writeShort(nt);
+            cpx.put(key, ncp);
+            return ncp++;
+        }
+        int integer(int v) throws IOException {
+            Integer i = cpx.get("I" + v);
+            if (i != null) return i;
+            cp.writeByte(3); cp.writeInt(v);
+            cpx.put("I" + v, ncp);
+            return ncp++;
+        }
+        ///
+        ///> bytecode emitters
+        ///
+        void u1(int v) {
+            if (bp == bc.length) bc = java.util.Arrays.copyOf(bc, bp * 2);
+            bc[bp++] = (byte)v;
+        }
+        void u2(int v) { u1(v >> 8); u1(v); }
+        void ld(int v) throws IOException {         ///< push int constant
+            if (v >= -1 && v <= 5)            u1(0x03 + v);             /// iconst_<v>
+            else if (v >= -128 && v <= 127)   { u1(0x10); u1(v); }      /// bipush
+            else if (v >= -32768 && v <= 32767) { u1(0x11); u2(v); }    /// sipush
+            else {
+                int i = integer(v);
+                if (i < 256) { u1(0x12); u1(i); } else { u1(0x13); u2(i); } /// ldc, ldc_w
+            }
+        }
+        void iload(int i)  { u1(0x15); u1(i); }
+        void istore(int i) { u1(0x36); u1(i); }
+        void ss()          { u1(0x2c); }            /// aload_2
+        void rs()          { u1(0x2d); }            /// aload_3
+        void vm()          { u1(0x2b); }            /// aload_1
+        void stk(String m, String d) throws IOException {      ///< invokevirtual Stk
+            u1(0xb6); u2(mref(STK, m, d));
+        }
+        void jit(String m, String d) throws IOException {      ///< invokestatic JIT
+            u1(0xb8); u2(mref(JITC, m, d));
+        }
+        void jump(int op, int ip) { fix.add(new int[] { bp, ip }); u1(op); u2(0); }
+        void halt(int ip, int to) throws IOException {         ///< stop check on backward jumps
+            if (to <= ip) { vm(); jit("halt", VMD + ")V"); }      /// * stack neutral
+        }
+        ///
+        ///> JVM stack caching of top cells
+        ///
+        void need(int m) throws IOException {       ///< top m cells on JVM stack (m <= 2)
+            if (k >= m) return;
+            if (m == 1 || k == 1) { ss(); stk("pop", "()I"); if (m == 2) u1(0x5f); }
+            else { ss(); stk("pop", "()I"); ss(); stk("pop", "()I"); u1(0x5f); }
+            k = m;
+        }
+        void room(int g) throws IOException {       ///< about to add g cells
+            if (k + g > KMAX) flush();
+        }
+        void flush() throws IOException {           ///< spill cached cells into ss
+            for (int i=k-1; i >= 0; i--) istore(TMP + i);
+            for (int i=0; i < k; i++) { ss(); iload(TMP + i); stk("push", "(I)V"); }
+            k = 0;
+        }
+        void cond(int op, int ip) throws IOException {         ///< pop, branch
+            if (k > 0) { istore(TMP + KMAX + 2); k--; flush(); iload(TMP + KMAX + 2); }
+            else       { ss(); stk("pop", "()I"); }
+            jump(op, ip);
+        }
+        void bin(int op) throws IOException { need(2); u1(op); k--; }
+        void div(int op) throws IOException {       ///< may throw, cells below into ss first
+            need(2);
+            if (k > 2) {
+                istore(TMP + KMAX + 2); istore(TMP + KMAX + 1); k -= 2;
+                flush();
+                iload(TMP + KMAX + 1);  iload(TMP + KMAX + 2);  k = 2;
+            }
+            u1(op); k--;
+        }
+        void cmp(String m) throws IOException { need(2); jit(m, "(II)I"); k--; }
+        ///
+        ///> inline built-in words, false if not inlinable
+        ///
+        boolean inline(String n) throws IOException {
+            switch (n) {
+            case "+":      bin(0x60); break;
+            case "-":      bin(0x64); break;
+            case "*":      bin(0x68); break;
+            case "/":      div(0x6c); break;
+            case "mod":    div(0x70); break;
+            case "and":    bin(0x7e); break;
+            case "or":     bin(0x80); break;
+            case "xor":    bin(0x82); break;
+            case "lshift": bin(0x78); break;
+            case "rshift": bin(0x7c); break;
+            case "negate": need(1); u1(0x74); break;
+            case "abs":    need(1); u1(0xb8); u2(mref("java/lang/Math", "abs", "(I)I")); break;
+            case "max":    need(2); u1(0xb8); u2(mref("java/lang/Math", "max", "(II)I")); k--; break;
+            case "min":    need(2); u1(0xb8); u2(mref("java/lang/Math", "min", "(II)I")); k--; break;
+            case "1+":     need(1); u1(0x04); u1(0x60); break;
+            case "1-":     need(1); u1(0x04); u1(0x64); break;
+            case "2*":     need(1); u1(0x05); u1(0x68); break;
+            case "2/":     need(1); u1(0x05); u1(0x6c); break;
+            case "0=":     need(1); jit("zeq", "(I)I"); break;
+            case "0<":     need(1); jit("zlt", "(I)I"); break;
+            case "0>":     need(1); jit("zgt", "(I)I"); break;
+            case "=":      cmp("eq"); break;
+            case "<>":     cmp("ne"); break;
+            case "<":      cmp("lt"); break;
+            case ">":      cmp("gt"); break;
+            case ">=":     cmp("ge"); break;
+            case "dup":    room(1); need(1); u1(0x59); k++; break;
+            case "drop":
+                if (k > 0) { u1(0x57); k--; }
+                else       { ss(); stk("pop", "()I"); u1(0x57); }
+                break;
+            case "swap":   need(2); u1(0x5f); break;
+            case "over":   room(1); need(2); u1(0x5f); u1(0x5a); k++; break;   /// swap dup_x1
+            case "nip":    need(2); u1(0x5f); u1(0x57); k--; break;
+            case "2dup":   room(2); need(2); u1(0x5c); k += 2; break;
+            case "i":
+            case "r@":     room(1); rs(); stk("peek", "()I"); k++; break;
+            case ">r":
+            case "push":   need(1); rs(); u1(0x5f); stk("push", "(I)V"); k--; break;
+            case "r>":
+            case "pop":    room(1); rs(); stk("pop", "()I"); k++; break;
+            default: return false;
+            }
+            return true;
+        }
+        ///
+        ///> translate threaded code
+        ///
+        void body() throws IOException {
+            boolean[] tgt = new boolean[tc.length + 1];
+            int[]     pos = new int[tc.length + 1];
+            for (int ip=0; ip < tc.length; ip += len(tc[ip])) {
+                switch (tc[ip]) {                    /// * mark jump targets
+                case TC.BRA: case TC.BRZ: case TC.BNZ: case TC.NXT: case TC.LOOP:
+                    tgt[tc[ip + 1]] = true; break;
+                case TC.LEAVE:
+                    tgt[tc[ip + 2]] = true; break;
+                }
+            }
+            vm(); jit("ss", VMD + ")L" + STK + ";"); u1(0x4d);   /// astore_2
+            vm(); jit("rs", VMD + ")L" + STK + ";"); u1(0x4e);   /// astore_3
+            for (int ip=0; ip < tc.length; ip += len(tc[ip])) {
+                if (tgt[ip]) flush();                /// * empty JVM stack at joins
+                pos[ip] = bp;
+                int op = tc[ip], a = ip + 1 < tc.length ? tc[ip + 1] : 0;
+                switch (op) {
+                case TC.RET:  flush(); u1(0xb1);                           break;
+                case TC.YIELD: throw new IOException("fiber yield");           /// * keep threaded
+                case TC.LIT:  room(1); ld(a); k++;                         break;
+                case TC.BRA:  flush(); halt(ip, a); jump(0xa7, a);         break;
+                case TC.BRZ:  halt(ip, a); cond(0x99, a);                  break;   /// ifeq
+                case TC.BNZ:  halt(ip, a); cond(0x9a, a);                  break;   /// ifne
+                case TC.TOR:  need(1); rs(); u1(0x5f); stk("push", "(I)V"); k--; break;
+                case TC.TOR2:
+                    need(2);
+                    rs(); u1(0x5f); stk("push", "(I)V");
+                    rs(); u1(0x5f); stk("push", "(I)V");
+                    k -= 2;                                                break;
+                case TC.DO:   flush(); rs(); stk("swap", "()V");           break;
+                case TC.NXT:  flush(); halt(ip, a); rs(); jit("nxt",  "(L" + STK + ";)Z"); jump(0x9a, a); break;
+                case TC.LOOP: flush(); halt(ip, a); rs(); jit("loop", "(L" + STK + ";)Z"); jump(0x9a, a); break;
+                case TC.LEAVE:
+                    flush();
+                    for (int n=a; n > 0; n--) { rs(); stk("pop", "()I"); u1(0x57); }
+                    jump(0xa7, tc[ip + 2]);                                break;
+                case TC.NODE:
+                    flush(); vm(); ld(w.token); ld(a); jit("node", VMD + "II)V"); break;
+                case TC.DOES:
+                    flush(); vm(); ld(w.token); ld(a); jit("does", VMD + "II)V");
+                    u1(0xb1);                                              break;
+                case TC.ADDL: need(1); ld(a); u1(0x60);                    break;
+                case TC.MULL: need(1); ld(a); u1(0x68);                    break;
+                case TC.SUBL: need(1); ld(a); u1(0x64);                    break;
+                case TC.OVER2:room(2); need(2); u1(0x5c); k += 2;          break;
+                case TC.SQR:  need(1); u1(0x59); u1(0x68);                 break;
+                case TC.RAT2: room(1); rs(); stk("peek", "()I"); u1(0x05); u1(0x68); k++; break;
+                case TC.INCD: room(1); need(1); u1(0x04); u1(0x60); u1(0x59); k++; break;
+                default: {
+                    Code x = vm.dict.get(op);
+                    if (vm.dict.shared(op) && inline(x.name)) break;
+                    flush(); vm(); ld(op);
+                    jit(x.xt != null ? "prim" : "call", VMD + "I)V");
+                }
+                }
+            }
+            for (int[] f : fix) {                    /// * resolve jumps
+                int d = pos[f[1]] - f[0];
+                if (d != (short)d) throw new IOException("jump too far");
+                bc[f[0] + 1] = (byte)(d >> 8);
+                bc[f[0] + 2] = (byte)d;
+            }
+        }
+        int len(int op) {                            ///< instruction length in tc
+            switch (op) {
+            case TC.LEAVE: return 3;
+            case TC.LIT:  case TC.BRA:  case TC.BRZ:  case TC.BNZ:  case TC.NXT:
+            case TC.LOOP: case TC.NODE: case TC.DOES: case TC.ADDL: case TC.MULL:
+            case TC.SUBL: return 2;
+            default:      return 1;
+            }
+        }
+        ///
+        ///> class file
+        ///
+        byte[] build() throws IOException {
+            body();
+            int code = utf8("Code");
+            int self = cls(name), sup = cls("java/lang/Object");
+            int ifc  = cls(JITC + "$Word");
+            int init = utf8("<init>"), vd = utf8("()V");
+            int oini = mref("java/lang/Object", "<init>", "()V");
+            int run  = utf8("run"), rd = utf8(VMD + ")V");
+
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            DataOutputStream      o = new DataOutputStream(b);
+            o.writeInt(0xcafebabe);
+            o.writeShort(0); o.writeShort(49);       /// * Java 5 format, no stack maps
+            o.writeShort(ncp);
+            cp.flush(); cpb.writeTo(o);
+            o.writeShort(0x0031);                    /// * public final super
+            o.writeShort(self); o.writeShort(sup);
+            o.writeShort(1); o.writeShort(ifc);
+            o.writeShort(0);                         /// * no fields
+            o.writeShort(2);
+            byte[] ci = { 0x2a, (byte)0xb7, (byte)(oini >> 8), (byte)oini, (byte)0xb1 };
+            method(o, init, vd, code, 1, 1, ci, ci.length);
+            method(o, run, rd, code, KMAX + 8, TMP + KMAX + 3, bc, bp);
+            o.writeShort(0);                         /// * no class attributes
+            return b.toByteArray();
+        }
+        void method(DataOutputStream o, int n, int d, int code,
+                    int stack, int locals, byte[] c, int len) throws IOException {
+            o.writeShort(0x0001);                    /// * public
+            o.writeShort(n); o.writeShort(d);
+            o.writeShort(1);
+            o.writeShort(code);
+            o.writeInt(12 + len);
+            o.writeShort(stack); o.writeShort(locals);
+            o.writeInt(len); o.write(c, 0, len);
+            o.writeShort(0); o.writeShort(0);        /// * no handlers, no attributes
+        }
+    }
+}
@@ -0,0 +1,152 @@
+///
+/// @file
+/// @brief - Main class - headless launcher, REPL or parallel batch of .fs files
+///
+package com.gnii.keforth.eforth;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.gnii.keforth.JavaCallback.PostType;
+
+///
+///> plain JVM entry point, no Android needed
+///    Main                                   REPL on stdin/stdout
+///    Main [-j n] [-t sec] [-o dir] [-q] a.fs b.fs ...   batch
+///    -c dir   include cache in dir (default ~/.keforth/cache), -c - none
+///  batch runs every file in a VM of its own on n threads (all cores by
+///  default), keeps each file's output (in dir/<name>.out with -o, else
+///  printed in file order at the end, none with -q), then reports wall
+///  time, outer interpreter tokens, peak stack depth and errors per file;
+///  exit status is 1 if any file failed or timed out
+///
+public class Main {
+    static class Run {                              ///< one batch file
+        final String fn;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long    ns   = 0;                           ///< wall time
+        long    tok  = 0;                           ///< outer interpreter tokens
+        int     peak = 0;                           ///< data stack high-water mark
+        int     nerr = 0;                           ///< errors reported by IO.err
+        volatile String fail = null;                ///< timeout or I/O trouble
+        Run(String fn) { this.fn = fn; }
+    }
+    public static void main(String[] args) throws Exception {
+        int     j = Runtime.getRuntime().availableProcessors(), t = 0;
+        File    o = null;
+        boolean q = false;
+        File    c = new File(System.getProperty("user.home"), ".keforth" + File.separator + "cache");
+        FV<String> fs = new FV<>();
+        for (int i=0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-j": j = Integer.parseInt(args[++i]); break;
+            case "-t": t = Integer.parseInt(args[++i]); break;
+            case "-o": o = new File(args[++i]);         break;
+            case "-q": q = true;                        break;
+            case "-c": c = "-".equals(args[++i]) ? null : new File(args[i]); break;
+            case "-h":
+                System.out.println("usage: Main [-j threads] [-t sec] [-o dir] [-q] [-c dir|-] [file.fs ...]");
+                return;
+            default:   fs.add(args[i]);
+            }
+        }
+        Cache.dir(c);                               /// * per user, not the shared tmpdir
+        if (fs.isEmpty()) repl();
+        else System.exit(batch(fs, j, t, o, q) ? 0 : 1);
+    }
+    ///
+    ///> REPL - same loop as the Android Eforth thread, on stdin/stdout
+    ///
+    static void repl() {
+        IO io = new IO("keForth", System.in, System.out);
+        VM vm = new VM(io, (t, m) -> { if (t != PostType.PROF) io.pstr(m); });
+        io.mstat();
+        vm.ok(false);
+        while (io.readline()) {
+            if (!vm.outer()) break;
+        }
+        io.cr();
+    }
+    ///
+    ///> batch - one isolated VM per file, run on a fixed pool
+    ///
+    static boolean batch(FV<String> fs, int j, int t, File o, boolean q) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, j), r -> {
+            Thread th = new Thread(r, "eforth-batch");
+            th.setDaemon(true);                     /// * tasks left running don't hold exit
+            return th;
+        });
+        ScheduledExecutorService dog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "eforth-timeout");
+            th.setDaemon(true);
+            return th;
+        });
+        long t0 = System.nanoTime();
+        FV<Run>       rs = new FV<>();
+        FV<Future<?>> ft = new FV<>();
+        for (String fn : fs) {
+            Run r = new Run(fn);
+            rs.add(r);
+            ft.add(pool.submit(() -> run(r, t, dog)));
+        }
+        for (Future<?> f : ft) f.get();
+        pool.shutdown();
+        dog.shutdown();
+        long ns = System.nanoTime() - t0;
+
+        if (o != null) o.mkdirs();
+        for (Run r : rs) {                          /// * outputs, in file order
+            if (o != null) {
+                try (OutputStream f = new FileOutputStream(new File(o, new File(r.fn).getName() + ".out"))) {
+                    r.out.writeTo(f);
+                }
+            }
+            else if (!q) {
+                System.out.println("==> " + r.fn + " <==");
+                r.out.writeTo(System.out);
+                System.out.println();
+            }
+        }
+        boolean ok = true;
+        System.out.printf("%10s %10s %6s %4s  %s%n", "ms", "tokens", "peak", "err", "file");
+        for (Run r : rs) {
+            System.out.printf("%10.1f %10d %6d %4d  %s%s%n", r.ns / 1e6, r.tok, r.peak, r.nerr,
+                              r.fn, r.fail == null ? "" : "  (" + r.fail + ")");
+            ok &= r.nerr == 0 && r.fail == null;
+        }
+        System.out.printf("%d file(s) on %d thread(s), %.1f ms%n", rs.size(), j, ns / 1e6);
+        return ok;
+    }
+    static void run(Run r, int t, ScheduledExecutorService dog) {
+        long t0 = System.nanoTime();
+        ScheduledFuture<?> k = null;
+        try (InputStream in = new FileInputStream(r.fn)) {
+            IO io = new IO(r.fn, in, r.out);
+            VM vm = new VM(io, (p, m) -> { if (p != PostType.PROF) io.pstr(m); });
+            if (t > 0) k = dog.schedule(() -> {     /// * stop at the next call/branch
+                r.fail  = "timeout";
+                vm.run  = false;
+                vm.halt = true;
+            }, t, TimeUnit.SECONDS);
+            while (!vm.halt && io.readline()) {
+                if (!vm.outer()) break;
+            }
+            r.tok  = vm.met.tok;
+            r.peak = vm.ss.hi;
+            r.nerr = io.nerr;
+        }
+        catch (Exception e) { r.fail = e.toString(); }
+        finally { if (k != null) k.cancel(false); }
+        r.ns = System.nanoTime() - t0;
+    }
+}
@@ -0,0 +1,142 @@
+///
+/// @file
+/// @brief - Metrics class - interpreter counters and per-line latency
+///
+package com.gnii.keforth.eforth;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.gnii.keforth.JavaCallback.PostType;
+
+///
+///> always on, counted where the interpreters already are
+///    tok    tokens taken by the outer interpreter
+///    find   dictionary lookups by outer, miss: not found (number or error)
+///    lit    numbers parsed by outer
+///    words  colon words entered (call, threaded, Code tree)
+///    prims  primitives and tree nodes dispatched (JIT code not counted)
+///    lat    VM.outer() per input line, log2 ns buckets
+///    stats  ( print )   n stats-every ( post to host as LOG every n ms, 0 off )
+///  and the bench word, see bench()
+///
+public class Metrics {
+    static volatile ScheduledExecutorService dog;  ///< stats-every timer, shared
+
+    long   tok   = 0, find = 0, miss = 0, lit = 0;
+    long   words = 0, prims = 0;
+    long   lines = 0, lmax = 0;            ///< outer() calls, slowest ns
+    final long[] lat = new long[64];       ///< lat[b]: lines taking [2^(b-1), 2^b) ns
+    ScheduledFuture<?> tick = null;        ///< periodic post
+
+    void line(long ns) {
+        lines++;
+        lat[64 - Long.numberOfLeadingZeros(ns)]++;
+        if (ns > lmax) lmax = ns;
+    }
+    long pct(double q) {                   ///< upper bound ns of q-quantile line
+        long k = (long)Math.ceil(q * lines), c = 0;
+        for (int b=0; b < lat.length; b++) {
+            if ((c += lat[b]) >= k && c > 0) return b == 0 ? 0 : Math.min(1L << b, lmax);
+        }
+        return lmax;
+    }
+    ///
+    ///> snapshot for Java callers, in report order
+    ///
+    Map<String, Long> snapshot(VM vm) {
+        Map<String, Long> m = new LinkedHashMap<>();
+        m.put("tokens",  tok);
+        m.put("finds",   find);
+        m.put("misses",  miss);
+        m.put("literals",lit);
+        m.put("words",   words);
+        m.put("prims",   prims);
+        m.put("ss_hi",   (long)vm.ss.hi);
+        m.put("rs_hi",   (long)vm.rs.hi);
+        m.put("lines",   lines);
+        m.put("p50_ns",  pct(0.50));
+        m.put("p99_ns",  pct(0.99));
+        m.put("max_ns",  lmax);
+        return m;
+    }
+    String report(VM vm) {
+        StringBuilder s = new StringBuilder();
+        int i = 0;
+        for (Map.Entry<String, Long> e : snapshot(vm).entrySet()) {
+            s.append(String.format("%-9s%12d", e.getKey(), e.getValue()));
+            s.append(++i % 3 == 0 ? "\n" : "   ");
+        }
+        return s.toString();
+    }
+    void every(VM vm, int ms) {            ///< stats-every
+        if (tick != null) tick.cancel(false);
+        tick = null;
+        if (ms <= 0 || vm.java_api == null) return;
+        if (dog == null) {
+            synchronized (Metrics.class) {
+                if (dog == null) dog = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "eforth-stats");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+        tick = dog.scheduleAtFixedRate(       /// * racy reads, fine for a gauge
+            () -> vm.java_api.onPost(PostType.LOG, report(vm)), ms, ms, TimeUnit.MILLISECONDS);
+    }
+    ///
+    ///> bench ( xt n -- ) - warm up with max(n, 2 x JIT.HOT) calls, then time n
+    ///  calls in up to 100 batches; ns/op of the batches gives min, median,
+    ///  p99 and mean. Bytes/op where the JVM counts thread allocation (not ART)
+    ///
+    static final int SAMPLES = 100;
+    static Method alloc;                   ///< ThreadMXBean.getThreadAllocatedBytes
+    static Object mx;
+
+    static synchronized long allocated() { ///< bytes by this thread, -1 unknown
+        try {
+            if (mx == null) {              /// * reflective, no java.lang.management on ART
+                mx    = Class.forName("java.lang.management.ManagementFactory")
+                             .getMethod("getThreadMXBean").invoke(null);
+                alloc = Class.forName("com.sun.management.ThreadMXBean")
+                             .getMethod("getThreadAllocatedBytes", long.class);
+            }
+            return (Long)alloc.invoke(mx, Thread.currentThread().getId());
+        }
+        catch (Throwable e) { return -1; }
+    }
+    static void bench(VM vm, Code w, int n) {
+        if (n <= 0) { vm.io.pstr("bench count? "); return; }
+        int d0 = vm.ss.size();
+        for (int i=Math.max(n, 2 * JIT.HOT); i > 0; i--) vm.call(w);      /// * warmup
+        if (vm.ss.size() != d0) {
+            vm.io.pstr(w.name + " not stack neutral? ");
+            while (vm.ss.size() > d0) vm.ss.pop();
+            return;
+        }
+        int    k = Math.max(1, n / SAMPLES), m = n / k;                     /// * calls a batch, batches
+        double[] s = new double[m];
+        long   a0 = allocated(), t = 0;
+        for (int j=0; j < m; j++) {
+            long t0 = System.nanoTime();
+            for (int i=0; i < k; i++) vm.call(w);
+            long dt = System.nanoTime() - t0;
+            s[j] = (double)dt / k;
+            t   += dt;
+        }
+        long a1 = allocated();
+        Arrays.sort(s);
+        vm.io.pstr(String.format("%s: min %.1f median %.1f p99 %.1f mean %.1f ns/op, %s (%d x %d)\n",
+            w.name, s[0], s[m / 2], s[Math.min(m - 1, (int)Math.ceil(m * 0.99) - 1)],
+            (double)t / (m * k),
+            a0 < 0 || a1 < 0 ? "alloc n/a" : String.format("%.1f B/op", (double)(a1 - a0) / (m * k)),
+            m, k));
+    }
+}
@@ -0,0 +1,129 @@
+///
+/// @file
+/// @brief - Prof class - per word execution profiler
+///
+package com.gnii.keforth.eforth;
+
+import java.util.Arrays;
+
+import com.gnii.keforth.JavaCallback.PostType;
+
+///
+///> word profile, counters in primitive arrays indexed by Code.token
+///    profile-on  profile-off  profile-reset  profile-report
+///  while on (or sampled, see Flame), colon words are entered through run()
+///  (JIT bypassed), which keeps a shadow stack of their tokens and times
+///  them; dictionary primitives are counted and timed through prim(); off,
+///  the cost is a null check of vm.prof per word dispatched
+///    incl: time in the word and all it calls (outermost activation only)
+///    excl: incl less the time of the words it called
+///    depth: most activations of the word at once (recursion)
+///  note: literals, branches and fused TC pairs (1+ dup, dup * ...) are not
+///  words, their time stays with the colon word running them
+///  note: a fiber yields only at its base word while profiled
+///
+public class Prof {
+    long[] calls = new long[256];
+    long[] incl  = new long[256];          ///< ns
+    long[] excl  = new long[256];          ///< ns
+    int[]  dep   = new int[256];           ///< activations now
+    int[]  max   = new int[256];           ///< deepest recursion
+    long[] kid   = new long[64];           ///< frame stack - ns spent in callees
+    int    fp    = 0;
+    int[]  cs    = new int[64];            ///< shadow call stack, tokens
+    volatile int csp = 0;                  ///< read by the sampler thread
+    boolean timed = false;                 ///< profile-on
+    Flame   fl    = null;                  ///< flame-on sampler, kept for flame-dump
+
+    static Prof of(VM vm) {                ///< counters live on after off
+        if (vm.prof0 == null) vm.prof0 = new Prof();
+        return vm.prof0;
+    }
+    void hook(VM vm) { vm.prof = timed || (fl != null && fl.on) ? this : null; }
+    void timed(VM vm, boolean f) { timed = f; hook(vm); }
+    void flame(VM vm, int us) {            ///< us > 0 samples afresh, else stops
+        if (fl != null) fl.stop();
+        if (us > 0) fl = new Flame(this, us * 1000L);
+        hook(vm);
+    }
+    ///
+    ///> colon word entry, while hooked
+    ///
+    void run(VM vm, Code w) {
+        if (w.token >= vm.dict.size() || vm.dict.get(w.token) != w) {
+            exec(vm, w);                   /// * anonymous (pdo), counted in its caller
+            return;
+        }
+        if (csp == cs.length) cs = Arrays.copyOf(cs, csp * 2);
+        cs[csp] = w.token;
+        csp++;                             /// * publish frame to sampler
+        try {
+            if (timed) time(vm, w);
+            else       exec(vm, w);
+        }
+        finally { csp--; }
+    }
+    ///
+    ///> primitive dispatch, while hooked; timed as a word of its own
+    ///
+    void prim(VM vm, Code w) {
+        if (timed && w.token < vm.dict.size() && vm.dict.get(w.token) == w) time(vm, w);
+        else w.xt.accept(vm, w);           /// * tree node, or flame only
+    }
+    static void exec(VM vm, Code w) {
+        if      (w.xt != null)                w.xt.accept(vm, w);   /// * primitive
+        else if (vm.threaded && w.tc != null) vm.inner(w, 0, false);
+        else                                  w.body(vm);
+    }
+    void time(VM vm, Code w) {
+        int t = w.token;
+        if (t >= calls.length) grow(t + 1);
+        if (fp == kid.length) kid = Arrays.copyOf(kid, fp * 2);
+        calls[t]++;
+        if (++dep[t] > max[t]) max[t] = dep[t];
+        kid[fp++] = 0;
+        long t0 = System.nanoTime();
+        try     { exec(vm, w); }
+        finally {
+            long d = System.nanoTime() - t0;
+            excl[t] += d - kid[--fp];
+            if (--dep[t] == 0) incl[t] += d;
+            if (fp > 0) kid[fp - 1] += d;
+        }
+    }
+    void grow(int n) {
+        n = Math.max(n, calls.length * 2);
+        calls = Arrays.copyOf(calls, n);
+        incl  = Arrays.copyOf(incl,  n);
+        excl  = Arrays.copyOf(excl,  n);
+        dep   = Arrays.copyOf(dep,   n);
+        max   = Arrays.copyOf(max,   n);
+    }
+    void reset() {                         ///< counters only, frames in flight stay
+        Arrays.fill(calls, 0);
+        Arrays.fill(incl,  0);
+        Arrays.fill(excl,  0);
+        Arrays.fill(max,   0);
+    }
+    ///
+    ///> report, by exclusive time; also posted to the host as PROF csv
+    ///    name,calls,incl_ns,excl_ns,depth per line
+    ///
+    void report(VM vm) {
+        Integer[] ix = new Integer[calls.length];
+        int n = 0;
+        for (int i=0; i < calls.length; i++) if (calls[i] > 0) ix[n++] = i;
+        Arrays.sort(ix, 0, n, (a, b) -> Long.compare(excl[b], excl[a]));
+        StringBuilder csv = new StringBuilder();
+        vm.io.pstr(String.format("%-16s %10s %12s %12s %5s\n", "word", "calls", "incl(us)", "excl(us)", "depth"));
+        for (int k=0; k < n; k++) {
+            int    i  = ix[k];
+            String nm = i < vm.dict.size() ? vm.dict.get(i).name : "?" + i;  /// * forgotten
+            vm.io.pstr(String.format("%-16s %10d %12.1f %12.1f %5d\n",
+                       nm, calls[i], incl[i] / 1e3, excl[i] / 1e3, max[i]));
+            csv.append(nm).append(',').append(calls[i]).append(',').append(incl[i])
+               .append(',').append(excl[i]).append(',').append(max[i]).append('\n');
+        }
+        if (vm.java_api != null) vm.java_api.onPost(PostType.PROF, csv.toString());
+    }
+}
@@ -0,0 +1,93 @@
+///
+/// @file
+/// @brief - primitive int stack (no boxing, cached top-of-stack)
+///
+package com.gnii.keforth.eforth;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+public class Stk {
+    static final int STK_SZ = 64;          ///< initial capacity (grows on demand)
+
+    int[] v;                               ///< cells below top of stack
+    int   n   = 0;                         ///< depth
+    int   top = 0;                         ///< cached top of stack (valid when n > 0)
+    int   hi  = 0;                         ///< peak depth
+
+    public Stk()       { v = new int[STK_SZ]; }
+    public Stk(int sz) { v = new int[Math.max(sz, 2)]; }
+    ///
+    ///> bounds checking
+    ///
+    private void need(int k) {             ///< at least k items on stack
+        if (n < k) throw new EmptyStackException();
+    }
+    private int  at(int i) {               ///< check index i (from bottom)
+        if (i < 0 || i >= n) throw new IndexOutOfBoundsException("stack idx=" + i + " depth=" + n);
+        return i;
+    }
+    private void spill() {                 ///< move top into v[n-1] (for bulk ops)
+        if (n > v.length) v = Arrays.copyOf(v, v.length * 2);
+        if (n > 0) v[n - 1] = top;
+    }
+    ///
+    ///> stack ops
+    ///
+    public int     size()      { return n;      }
+    public boolean isEmpty()   { return n == 0; }
+    public void    clear()     { n = 0;         }
+    public void push(int x) {
+        if (n > 0) {
+            if (n > v.length) v = Arrays.copyOf(v, v.length * 2);
+            v[n - 1] = top;
+        }
+        top = x;
+        if (++n > hi) hi = n;
+    }
+    public int pop() {
+        need(1);
+        int x = top;
+        if (--n > 0) top = v[n - 1];
+        return x;
+    }
+    public int  peek()         { need(1); return top; }
+    public void poke(int x)    { need(1); top = x;    }   ///< replace top of stack
+    public int  get(int i)     {                          ///< i-th item from bottom
+        return at(i) == n - 1 ? top : v[i];
+    }
+    public void set(int i, int x) {
+        if (at(i) == n - 1) top = x; else v[i] = x;
+    }
+    public int  pick(int i)    { return get(n - 1 - i); } ///< i-th item from top
+    ///
+    ///> stack shuffling (in place)
+    ///
+    public void swap() {
+        need(2);
+        int x = v[n - 2]; v[n - 2] = top; top = x;
+    }
+    public void over() { need(2); push(v[n - 2]); }
+    public void nip()  { need(2); n--; }
+    public void roll(int i) {              ///< move i-th item (from top) to top
+        int k = at(n - 1 - i);
+        if (i == 0) return;
+        spill();
+        int x = v[k];
+        System.arraycopy(v, k + 1, v, k, i);
+        v[n - 1] = top = x;
+    }
+    public void unroll(int i) {            ///< move top down to i-th item
+        int k = at(n - 1 - i);
+        if (i == 0) return;
+        spill();
+        int x = v[n - 1];
+        System.arraycopy(v, k, v, k + 1, i);
+        v[k] = x;
+        top  = v[n - 1];
+    }
+    public int[] toArray() {               ///< bottom to top copy
+        spill();
+        return Arrays.copyOf(v, n);
+    }
+}
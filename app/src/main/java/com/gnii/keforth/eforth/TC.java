@@ -0,0 +1,209 @@
+///
+/// @file
+/// @brief - TC class - flattens a colon word's Code tree into threaded code
+///
+package com.gnii.keforth.eforth;
+
+import java.util.Arrays;
+
+public class TC {
+    ///
+    ///> opcodes, tokens >= 0 are dictionary words
+    ///
+    static final int RET   = -1;           ///< return from word
+    static final int LIT   = -2;           ///< LIT n       push literal
+    static final int BRA   = -3;           ///< BRA ip      jump
+    static final int BRZ   = -4;           ///< BRZ ip      pop, jump if zero
+    static final int TOR   = -5;           ///< >r          for..
+    static final int NXT   = -6;           ///< NXT ip      ..next, index-1, jump if >= 0
+    static final int TOR2  = -7;           ///< 2>r         do..
+    static final int DO    = -8;           ///< R: idx lim -- lim idx
+    static final int LOOP  = -9;           ///< LOOP ip     ..loop, index+1, jump if < limit
+    static final int LEAVE = -10;          ///< LEAVE n ip  drop n loop cells, jump
+    static final int NODE  = -11;          ///< NODE i      run tree node tn[i]
+    static final int DOES  = -12;          ///< DOES i      does> tn[i], then return
+    ///
+    ///> superinstructions, fused at ';'
+    ///
+    static final int ADDL  = -13;          ///< ADDL n      n +
+    static final int MULL  = -14;          ///< MULL n      n *
+    static final int SUBL  = -15;          ///< SUBL n      n -
+    static final int OVER2 = -16;          ///< over over
+    static final int SQR   = -17;          ///< dup *
+    static final int RAT2  = -18;          ///< r@ 2*
+    static final int BNZ   = -19;          ///< BNZ ip      0= if
+    static final int INCD  = -20;          ///< 1+ dup
+    static final int YIELD = -21;          ///< switch fiber if pause/ms asked to
+    static final String[] OPS = {          ///< opcode names, indexed by -op
+        "", "ret", "lit", "bra", "brz", ">r", "next", "2>r", "do", "loop",
+        "leave", "node", "does>", "lit+", "lit*", "lit-", "over2", "dup*",
+        "r@2*", "0=if", "1+dup", "yield"
+    };
+    static final Object[][] FUSE = {       ///< { first, second, fused }, word names or opcodes
+        { LIT,    "+",    ADDL  },
+        { LIT,    "*",    MULL  },
+        { LIT,    "-",    SUBL  },
+        { "over", "over", OVER2 },
+        { "dup",  "*",    SQR   },
+        { "r@",   "2*",   RAT2  },
+        { "0=",   BRZ,    BNZ   },
+        { "1+",   "dup",  INCD  }
+    };
+
+    final VM  vm;
+    int[]     buf  = new int[32];          ///< token stream being built
+    int       pc   = 0;                    ///< next slot
+    int       last = -1;                   ///< start of last instruction
+    int       prev = 0;                    ///< last opcode, before fusion
+    int       lab  = -1;                   ///< latest jump target
+    FV<Code>  tn   = new FV<>();           ///< tree nodes used by NODE/DOES
+    FV<int[]> lp   = new FV<>();           ///< enclosing loops { rs cells, leave chain }
+
+    TC(VM vm) { this.vm = vm; }
+    ///
+    ///> resolve FUSE names against built-in words (called once, on VM.CORE)
+    ///
+    static int[][] fusion(Dict d) {
+        int[][] t = new int[FUSE.length][];
+        for (int i=0; i < FUSE.length; i++) {
+            Object[] r = FUSE[i];
+            t[i] = new int[] { token(d, r[0]), token(d, r[1]), (Integer)r[2] };
+        }
+        return t;
+    }
+    static int token(Dict d, Object o) {
+        return o instanceof String ? d.find((String)o, false).token : (Integer)o;
+    }
+    static String name(VM vm, int op) {
+        return op < 0 ? OPS[-op] : (op < vm.dict.size() ? vm.dict.get(op).name : "?");
+    }
+    static boolean fused(VM vm, int a, int b) {
+        for (int[] f : VM.fuse) if (f[0] == a && f[1] == b) return true;
+        return false;
+    }
+    ///
+    ///> translate colon word w, its pf tree is kept as reference
+    ///
+    static void compile(VM vm, Code w) {
+        TC t = new TC(vm);
+        t.emit(w.pf);
+        t.op(RET);
+        w.tc = Arrays.copyOf(t.buf, t.pc);
+        w.tn = t.tn.toArray(new Code[0]);
+    }
+    ///
+    ///> token stream builders
+    ///
+    void put(int v) {
+        if (pc == buf.length) buf = Arrays.copyOf(buf, pc * 2);
+        buf[pc++] = v;
+    }
+    void op(int v) {                                    ///< start an instruction
+        if (last >= 0 && lab != pc) {                   /// * no jump lands in between
+            vm.pairs.merge(((long)prev << 32) | (v & 0xffffffffL), 1, Integer::sum);
+            for (int[] f : VM.fuse) {
+                if (f[0] != buf[last] || f[1] != v) continue;
+                buf[last] = f[2];                       /// * fuse, operands follow
+                prev = v;
+                return;
+            }
+        }
+        last = pc;
+        prev = v;
+        put(v);
+    }
+    void op(int v, int a) { op(v); put(a);               }
+    int  hole(int v)      { op(v, 0); return pc - 1;     }  ///< forward jump, slot to patch
+    int  label()          { return lab = pc;             }  ///< jump target here
+    void patch(int at)    { buf[at] = label();           }
+    int  node(Code c)     { tn.add(c); return tn.size() - 1; }
+    ///
+    ///> tree walker
+    ///
+    void emit(FV<Code> pf) {
+        for (int i=0, n=pf.size(); i < n; i++) emit(pf.get(i));
+    }
+    void emit(Code c) {
+        Dict d = vm.dict;
+        if      (c.xt == VM._unnest) leave();              /// * exit, leave
+        else if (c.xt == VM._dolit)  op(LIT, c.val);
+        else if (c.xt == VM._branch) branch(c);
+        else if (c.xt == VM._begin)  begin(c);
+        else if (c.xt == VM._tor)    op(TOR);
+        else if (c.xt == VM._for)    dofor(c);
+        else if (c.xt == VM._tor2)   op(TOR2);
+        else if (c.xt == VM._loop)   doloop(c);
+        else if (c.xt == VM._dodoes) op(DOES, node(c));
+        else if (c.token < d.size() && d.get(c.token) == c) {
+            op(c.token);                                   /// * dictionary word
+            if (c.xt == VM._pause || c.xt == VM._ms) op(YIELD);
+        }
+        else op(NODE, node(c));                            /// * other literals
+    }
+    void branch(Code c) {                                  /// * if..{pf}..else..{p1}..then
+        int x = hole(BRZ);
+        emit(c.pf);
+        if (c.p1.isEmpty()) { patch(x); return; }
+        int y = hole(BRA);
+        patch(x);
+        emit(c.p1);
+        patch(y);
+    }
+    void begin(Code c) {
+        int l0 = label();
+        emit(c.pf);                                        /// * begin..
+        switch (c.stage) {
+        case 0:  op(BRZ, l0); break;                       /// * ..until
+        case 1:  op(BRA, l0); break;                       /// * ..again
+        default:                                           /// * ..while..repeat
+            int x = hole(BRZ);
+            emit(c.p1);
+            op(BRA, l0);
+            patch(x);
+        }
+    }
+    void dofor(Code c) {                                   /// * TOR emitted before
+        enter(1);
+        if (c.stage == 0) {                                /// * for..{pf}..next
+            int l0 = label();
+            emit(c.pf);
+            op(NXT, l0);
+        }
+        else {                                             /// * for..{pf}..aft..{p1}..then..{p2}..next
+            emit(c.pf);
+            int l0 = label();
+            emit(c.p2);
+            op(NXT, pc + 4);                               /// * to p1, skip BRA below
+            int x = hole(BRA);
+            label();
+            emit(c.p1);
+            op(BRA, l0);
+            patch(x);
+        }
+        exit();
+    }
+    void doloop(Code c) {                                  /// * TOR2 emitted before
+        op(DO);
+        enter(2);
+        int l0 = label();
+        emit(c.pf);
+        op(LOOP, l0);
+        exit();
+    }
+    ///
+    ///> loop exits, exit/leave leaves the innermost counted loop (as Code.loop does)
+    ///
+    void enter(int n) { lp.add(new int[] { n, -1 }); }
+    void exit() {
+        for (int i=lp.tail()[1]; i >= 0; ) {               /// * patch leave chain
+            int nx = buf[i]; buf[i] = label(); i = nx;
+        }
+        lp.drop();
+    }
+    void leave() {
+        if (lp.isEmpty()) { op(RET); return; }             /// * exit word
+        int[] l = lp.tail();
+        op(LEAVE, l[0]);
+        put(l[1]); l[1] = pc - 1;                          /// * chain slot for patching
+    }
+}
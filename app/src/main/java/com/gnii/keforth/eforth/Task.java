@@ -0,0 +1,238 @@
+///
+/// @file
+/// @brief - Task class - colon words running on their own VM context (thread pool)
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+///
+///> a task is a child VM (own data/return stacks, shared dictionary and IO)
+///  running one colon word on the executor, mirrors ceforth_task.cpp
+///    ' w task ( -- t )  t start   t join   t stop   rank ( -- t )
+///    v1 .. vn n t send   recv ( -- v1 .. vn )   n t pull ( -- v1 .. vn )
+///  messages are int batches passed through the receiver's Chan (task 0 is main)
+///  tasks are kept in the main VM's table until done and their stack is
+///  pulled or joined empty; a stopped task's stack is dropped
+///  note: words should not be (re)defined while tasks are running
+///
+public class Task implements Runnable {
+    enum State { HOLD, RUN, STOP }
+    ///
+    ///> thrown inside a task's VM to unwind it on stop
+    ///
+    static class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        Stop() { super("stop", null, false, false); }       /// * no stack trace
+    }
+    static final Stop STOP = new Stop();
+
+    static final AtomicInteger   seq  = new AtomicInteger(0);  ///< ids, all VMs
+    static volatile ExecutorService pool = null;            ///< created on first start
+
+    final int            id;
+    final VM             vm;                                ///< task context
+    final Code           w;                                 ///< colon word to run
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile State       st   = State.HOLD;
+    volatile Throwable   err  = null;                       ///< uncaught error, for join
+
+    Task(VM parent, Code w) {
+        this.id = seq.incrementAndGet();
+        this.vm = new VM(parent, id);
+        this.w  = w;
+    }
+    ///
+    ///> executor, virtual threads when the JVM has them, else a ForkJoinPool of
+    ///  one daemon worker per core; a task waiting in send/recv/join parks
+    ///  through managedBlock (see block), so the pool adds a spare worker only
+    ///  while it waits and queued peers still run
+    ///
+    public static synchronized void executor(ExecutorService e) { pool = e; }
+    static ExecutorService executor() {
+        ExecutorService p = pool;
+        if (p != null) return p;
+        synchronized (Task.class) {
+            if (pool != null) return pool;
+            try {                                           /// * Java 21+
+                pool = (ExecutorService)Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (Exception e) {                           /// * e.g. Android, older JVM
+                pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), p0 -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p0);
+                    t.setName("eforth-task-" + t.getPoolIndex());
+                    return t;                               /// * daemon, as all FJ workers
+                }, null, true);                             /// * FIFO, tasks are not forked
+            }
+            return pool;
+        }
+    }
+    ///
+    ///> waits of a task: block parks until ok (polled every 50us), await until
+    ///  latch d is down; on a pool worker the pool runs a spare thread meanwhile
+    ///
+    static void block(BooleanSupplier ok) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override public boolean isReleasable() { return ok.getAsBoolean(); }
+                @Override public boolean block() { LockSupport.parkNanos(50_000); return ok.getAsBoolean(); }
+            });
+        }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+    static void await(CountDownLatch d) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override public boolean isReleasable() { return d.getCount() == 0; }
+            @Override public boolean block() throws InterruptedException { d.await(); return true; }
+        });
+    }
+    @Override
+    public void run() {
+        try       { vm.call(w);       }
+        catch (Stop e)      { /* stopped */ }
+        catch (Throwable e) { err = e;      }
+        finally {
+            st = State.STOP;
+            if (vm.halt || (err == null && vm.ss.isEmpty()))
+                vm.main.tasks.remove(id);                   /// * stopped or nothing to collect
+            done.countDown();
+        }
+    }
+    ///
+    ///> task words
+    ///
+    static int create(VM vm, int t) {                       ///< ( w -- t )
+        Code w = vm.dict.get(t);
+        if (w.xt != null) { vm.io.pstr(w.name + " not a colon word? "); return 0; }
+        Task k = new Task(vm, w);
+        vm.main.tasks.put(k.id, k);
+        return k.id;
+    }
+    static Task get(VM vm, int id) {
+        Task k = vm.main.tasks.get(id);
+        if (k == null && !gone(id)) vm.io.pstr("task " + id + "? ");
+        return k;
+    }
+    static boolean gone(int id) { return id > 0 && id <= seq.get(); }  ///< issued, maybe retired
+    static void start(VM vm, int id) {
+        Task k = get(vm, id); if (k == null) return;
+        if (k.st != State.HOLD) { vm.io.pstr("task " + id + " started? "); return; }
+        k.st = State.RUN;
+        executor().execute(k);
+    }
+    static void join(VM vm, int id) {
+        Task k = get(vm, id); if (k == null) return;
+        if (k.st == State.HOLD) { vm.io.pstr("task " + id + " not started? "); return; }
+        try { await(k.done); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+        if (k.err != null) vm.io.err(new RuntimeException("task " + id, k.err));
+        if (k.vm.ss.isEmpty()) vm.main.tasks.remove(id);    /// * retire, nothing to pull
+    }
+    static void stop(VM vm, int id) {
+        Task k = get(vm, id); if (k == null) return;
+        k.vm.halt = true;                                   /// * seen at next branch or call
+        if (k.st == State.HOLD) { k.st = State.STOP; k.done.countDown(); }
+        if (k.st == State.STOP) vm.main.tasks.remove(id);   /// * done, drop its stack
+    }
+    ///
+    ///> messaging words
+    ///
+    static VM target(VM vm, int id) {
+        if (id == 0) return vm.main;
+        Task k = get(vm, id);
+        return k == null ? null : k.vm;
+    }
+    static int[] batch(Stk ss, int n, int k) {              ///< copy n cells below top k, keep order
+        int[] v = new int[n];
+        for (int i=0; i < n; i++) v[i] = ss.pick(n + k - 1 - i);
+        return v;
+    }
+    static void send(VM vm, boolean wait) {                 ///< ( v1 .. vn n t -- )
+        Stk ss = vm.ss;
+        int id = ss.pick(0), n = ss.pick(1);
+        VM  to = target(vm, id);
+        if (to == null) { ss.pop(); ss.pop(); return; }
+        int[] v = batch(ss, n, 2);
+        if (wait) to.box.put(vm, v);
+        else if (!to.box.offer(v)) { ss.push(0); return; }  /// * full, keep stack for retry
+        for (int i=n + 2; i > 0; i--) ss.pop();
+        if (!wait) ss.push(-1);
+    }
+    static void recv(VM vm, boolean wait) {                 ///< ( -- v1 .. vn )
+        int[] v = wait ? vm.box.take(vm) : vm.box.poll();
+        if (v == null) { vm.ss.push(0); return; }
+        for (int x : v) vm.ss.push(x);
+        if (!wait) vm.ss.push(-1);
+    }
+    static void bcast(VM vm) {                              ///< ( v1 .. vn n -- )
+        int   n = vm.ss.pop();
+        int[] v = batch(vm.ss, n, 0);
+        for (int i=0; i < n; i++) vm.ss.pop();
+        for (Task k : vm.main.tasks.values()) {             /// * live tasks of this family
+            if (k.vm == vm || k.st == State.STOP) continue;
+            k.vm.box.put(vm, v);                            /// * read-only, shared by all
+        }
+        if (vm != vm.main) vm.main.box.put(vm, v);
+    }
+    ///
+    ///> parallel loop - limit first pdo .. ploop, the range is split across the
+    ///  common ForkJoinPool, each part runs do..loop on a worker VM with its own
+    ///  stacks; the body must leave the stack as found and not rely on other
+    ///  iterations, outer loop indices (j) or allot
+    ///
+    static final int PDO_MIN = 16;                          ///< fewer iterations run inline
+
+    static void pdo_init(VM vm, Code b) {                   ///< at ploop, b holds the body
+        Code w = new Code("pdo"), l = new Code(VM._loop, "do");
+        l.pf = b.pf;                                        /// * each worker runs do..{pf}..loop
+        w.pf.add(new Code(VM._tor2, "tor2"));
+        w.pf.add(l);
+        if (vm.threaded) TC.compile(vm, w);
+        b.tn = new Code[] { w };
+    }
+    static void pdo(VM vm, Code c) {                        ///< ( limit first -- )
+        int i0 = vm.ss.pop(), n = vm.ss.pop();
+        Code w = c.tn[0];
+        if (n <= i0) n = i0 + 1;                            /// * runs once, as do..loop
+        int cpu = ForkJoinPool.getCommonPoolParallelism();
+        int p   = Math.min(cpu * 4, (n - i0) / PDO_MIN);    /// * a few parts per worker
+        if (cpu <= 1 || p <= 1 || vm.fib != null) {         /// * single core, small or in a fiber
+            vm.ss.push(n); vm.ss.push(i0);
+            vm.call(w);
+            return;
+        }
+        FV<ForkJoinTask<?>> ps = new FV<>();
+        for (int k=0; k < p; k++) {
+            int lo = i0 + (int)((long)(n - i0) * k / p);
+            int hi = i0 + (int)((long)(n - i0) * (k + 1) / p);
+            ps.add(ForkJoinTask.adapt(() -> {
+                VM x = new VM(vm, vm.id);
+                x.ss.push(hi); x.ss.push(lo);
+                x.call(w);
+                if (!x.ss.isEmpty())
+                    throw new IllegalStateException("pdo body left " + x.ss.size() + " on stack");
+            }));
+        }
+        ForkJoinTask.invokeAll(ps);                         /// * rethrows a worker's error
+    }
+    static void pull(VM vm) {                               ///< ( n t -- v1 .. vn )
+        int id = vm.ss.pop(), n = vm.ss.pop();
+        Task k = get(vm, id); if (k == null) return;
+        if (k.st == State.HOLD) { vm.io.pstr("task " + id + " not started? "); return; }
+        try { await(k.done); }                              /// * completed tasks only
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); return; }
+        Stk src = k.vm.ss;
+        for (int x : batch(src, n, 0)) vm.ss.push(x);
+        for (int i=0; i < n; i++) src.pop();
+        if (src.isEmpty()) vm.main.tasks.remove(id);        /// * drained, retire
+    }
+}
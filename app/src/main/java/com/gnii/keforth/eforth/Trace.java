@@ -0,0 +1,52 @@
+///
+/// @file
+/// @brief - Trace class - binary event ring buffer, decoded only on dump
+///
+package com.gnii.keforth.eforth;
+
+///
+///> fixed-size events in a preallocated ring, newest overwrite oldest
+///    n trace-on ( ring of n events, 0 = 4096 )   trace-off   trace-dump
+///  an event is two longs: op:8 | depth:24 | token:32, and System.nanoTime;
+///  the token field holds the number for NUM, the token length for MISS.
+///  Callers test vm.trc != null, so a VM not tracing pays that one branch
+///  and builds nothing
+///
+public class Trace {
+    static final int EXEC = 1, COMP = 2, NUM = 3, MISS = 4;   ///< ops
+    static final String[] OPS = { "?", "exec", "comp", "num", "miss" };
+
+    final long[] ev;                       ///< 2 longs an event
+    final int    mask;                     ///< events - 1
+    long         n = 0;                    ///< events written
+
+    Trace(int sz) {
+        int k = Integer.highestOneBit(Math.max(sz, 16) - 1) << 1;    /// * power of 2
+        ev   = new long[k * 2];
+        mask = k - 1;
+    }
+    void ev(int op, int tok, int depth) {
+        int i = (int)(n++ & mask) << 1;
+        ev[i]     = (long)op << 56 | (long)(depth & 0xffffff) << 32 | (tok & 0xffffffffL);
+        ev[i + 1] = System.nanoTime();
+    }
+    ///
+    ///> dump - oldest first, times in us from the oldest kept
+    ///
+    void dump(VM vm) {
+        long k  = Math.min(n, mask + 1), i0 = n - k;
+        long t0 = k > 0 ? ev[(int)(i0 & mask) << 1 | 1] : 0;
+        for (long j=i0; j < n; j++) {
+            int  i   = (int)(j & mask) << 1;
+            long e   = ev[i];
+            int  op  = (int)(e >>> 56), tok = (int)e, d = (int)(e >>> 32) & 0xffffff;
+            String s = op == NUM  ? Integer.toString(tok)
+                : op == MISS ? "len " + tok
+                : tok >= 0 && tok < vm.dict.size() ? "[" + tok + "]" + vm.dict.get(tok).name
+                : "[" + tok + "]?";
+            vm.io.pstr(String.format("%10.1f %-4s %-20s %d\n",
+                       (ev[i + 1] - t0) / 1e3, OPS[op < OPS.length ? op : 0], s, d));
+        }
+        vm.io.pstr(k + " of " + n + " events\n");
+    }
+}
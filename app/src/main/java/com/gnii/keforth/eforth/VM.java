@@ -6,16 +6,25 @@ package com.gnii.keforth.eforth;
 
 import static java.lang.Math.*;
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
-import java.util.function.Function;
-import java.util.function.BiFunction;
-import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.BiConsumer;
 
 import com.gnii.keforth.JavaCallback;
 import com.gnii.keforth.JavaCallback.PostType;
 
 public class VM {
+    static final Dict CORE = new Dict();           ///< built-in words, built once and shared
+    static final String[] PURE = {                 ///< foldable primitives, arity 1 then 2
+        "abs", "negate", "invert", "2*", "2/", "1+", "1-", "0=", "0<", "0>", null,
+        "+", "*", "-", "/", "mod", "and", "or", "xor", "rshift", "lshift",
+        "max", "min", "=", ">", "<", "<>", ">=", "<=", "u<", "u>"
+    };
     Dict         dict;
     IO           io;
     JavaCallback java_api;          ///< Java Callback interface
@@ -23,25 +32,67 @@ public class VM {
     ///
     ///> Forth stacks and dictionary
     ///
-    Stack<Integer>  ss = new Stack<>();
-    Stack<Integer>  rs = new Stack<>();
+    Stk     ss = new Stk();         ///< data stack
+    Stk     rs = new Stk();         ///< return stack
+    Code[]  rw = new Code[64];      ///< threaded call frames - word
+    int[]   ri = new int[64];       ///< threaded call frames - return ip
+    int     rp = 0;                 ///< threaded call frame pointer
+    static int[][] fuse;            ///< superinstruction table (see TC.FUSE)
+    HashMap<Long, Integer> pairs = new HashMap<>();  ///< opcode pair counts seen by TC
+    JIT     jit;                    ///< tier-2 compiler
+    int     hot = JIT.HOT;          ///< calls before a word is JIT compiled, 0 off
+    static int[]   pure;            ///< arity of foldable primitives, by token
+    Stk     fs  = new Stk(4);       ///< scratch stack for constant folding
     ///
     ///> Forth internal variables
     ///
     int     base    = 10;           ///< numeric radix
+    int     num     = 0;            ///< last value parsed by number()
     boolean run     = true;         ///< VM execution flag
     boolean compile = false;        ///< state: intepreter or compiling
+    boolean unnest  = false;        ///< exit/leave pending (Code tree)
+    boolean threaded= true;         ///< compile/run colon words as threaded code
+    int     id      = 0;            ///< task id, 0 for the main VM (see Task)
+    VM      main    = this;         ///< main VM of this task family
+    Map<Integer, Task> tasks = null;///< task table, main VM only (see Task)
+    Chan    box     = new Chan();   ///< mailbox for send/recv
+    volatile boolean halt = false;  ///< stop requested (Task.stop)
+    FV<Fiber> fq    = new FV<>();   ///< cooperative tasks, round-robin (see Fiber)
+    Fiber   fib     = null;         ///< fiber running, null on the main line
+    boolean pause   = false;        ///< fiber asked to yield (pause, ms)
+    Isr     isr     = new Isr();    ///< timer interrupts (tmisr)
+    Cache.Rec rec   = null;         ///< includes being recorded (see Cache)
+    Prof    prof    = null;         ///< per word profile while on, else null (see Prof)
+    Prof    prof0   = null;         ///< counters, kept for profile-report after off
+    Trace   trc     = null;         ///< event ring while trace-on (see Trace)
+    Metrics met     = new Metrics();///< interpreter counters, line latency
     ///
     ///> functional interfaces
     ///
     public VM(IO io, JavaCallback api) {
         this.io       = io;
         this.java_api = api;
-        dict = Dict.get_instance();
-        dict_init();
-        Code b = new Code(_dolit, "lit", 10);            ///< use dict[0] as base store
-        b.token = 0;
-        dict.get(0).pf.add(b);
+        dict = new Dict(CORE);                          ///< private words on shared core
+        jit  = new JIT(this);
+        tasks= new ConcurrentHashMap<>();
+        dict.setv(0, base);                             ///< data space cell 0 is base
+    }
+    VM(VM p, int id) {                                  ///< task context, shares p's words
+        this.io       = p.io;
+        this.java_api = p.java_api;
+        this.id       = id;
+        main     = p.main;
+        dict     = p.dict;
+        jit      = new JIT(this);
+        base     = p.base;
+        hot      = p.hot;
+        threaded = p.threaded;
+    }
+    public Map<String, Long> stats() { return met.snapshot(this); }  ///< metrics snapshot
+    public long idle() {                                ///< service timers, run fibers once
+        isr.serv(this);                                 ///> ns to next due, -1 none
+        long f = fq.isEmpty() ? -1 : Fiber.round(this), t = isr.wait_ns();
+        return f < 0 ? t : (t < 0 ? f : Math.min(f, t));
     }
     ///
     ///> Forth outer interpreter - process one line a time
@@ -57,52 +108,92 @@ public class VM {
         }
     }
     public boolean outer() {
-        String idiom = io.next_token();
-        while (run && idiom!=null) {                    ///> parse next token
-            parse(idiom);
-            idiom = io.next_token();
+        long t0 = System.nanoTime();
+        while (run && io.token() > 0) {                 ///> parse next token
+            met.tok++;
+            parse();
+            if (isr.on) isr.serv(this);                 ///> timer interrupts between tokens
         }
+        met.line(System.nanoTime() - t0);
         ok(false);
         return run;                                     ///> * return VM status
     }
-    int number(String idiom) {                          ///> parse a number
-        int b = 0;
-        switch (idiom.charAt(0)) {
-        case '%': b = 2;  break;
+    boolean number(char[] b, int i, int n) {            ///> parse a number into num, no exceptions
+        int r = base;
+        switch (b[i]) {                                 /// * radix prefix
+        case '%': r = 2;  i++; n--; break;
         case '&':
-        case '#': b = 10; break;
-        case '$': b = 16; break;
+        case '#': r = 10; i++; n--; break;
+        case '$': r = 16; i++; n--; break;
+        }
+        boolean neg = n > 0 && b[i] == '-';
+        if (n > 0 && (neg || b[i] == '+')) { i++; n--; }
+        if (n <= 0 || r < Character.MIN_RADIX || r > Character.MAX_RADIX) return false;
+        int lim = neg ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int mul = lim / r, v = 0;                       /// * accumulate negative, as parseInt
+        for (int e = i + n; i < e; i++) {
+            int d = Character.digit(b[i], r);
+            if (d < 0 || v < mul) return false;         /// * not a digit or overflow
+            v *= r;
+            if (v < lim + d) return false;
+            v -= d;
         }
-        return (b != 0)
-            ? Integer.parseInt(idiom.substring(1), b)
-            : Integer.parseInt(idiom, base);
+        num = neg ? v : -v;
+        return true;
     }
-    void parse(String idiom) {                          ///> outer interpreter (one line a time)
-        io.debug("find "+idiom);
-        Code w = dict.find(idiom, compile);             ///< search dictionary
+    void parse() {                                      ///> outer interpreter (token slice in io.tib)
+        Code w = dict.find(io.tib, io.ts, io.tl, compile); ///< search dictionary
+        met.find++;
         if (w != null) {                                ///> found word?
-            io.debug(" => [" + w.token + "]" + w.name + "\n");
+            if (trc != null) trc.ev(!compile || w.immd ? Trace.EXEC : Trace.COMP, w.token, ss.size());
             if (!compile || w.immd) {                   ///> in interpreter mode?
-                try                 { w.nest();  }      ///> * execute immediately
+                if (rec != null) Cache.exec(this, w);   ///> * include being cached
+                try                 { call(w);   }      ///> * execute immediately
                 catch (Exception e) { io.err(e); }      ///> * just-in-case it failed
             }
-            else dict.compile(w);                       ///> add to dictionary if in compile mode
+            else if (!fold(w)) dict.compile(w);         ///> add to dictionary if in compile mode
             return;
         }
-        else io.debug(" => not found");
         ///> word not found, try as a number
-        try {
-            int n=number(idiom);                        ///> * try process as a number
-            io.debug(" => "+n+"\n");
+        met.miss++;
+        if (number(io.tib, io.ts, io.tl)) {             ///> * try process as a number
+            int n = num;
+            met.lit++;
+            if (trc != null) trc.ev(Trace.NUM, n, ss.size());
             if (compile)                                ///>> in compile mode 
                 dict.compile(new Code(_dolit, "lit", n));  ///> add to latest defined word
             else ss.push(n);                            ///> or, add number to top of stack
         }                                            
-        catch (NumberFormatException ex) {              ///> if it's not a number
-            io.pstr(idiom + " ?");                      ///> * show not found sign
+        else {                                          ///> if it's not a number
+            if (trc != null) trc.ev(Trace.MISS, io.tl, ss.size());
+            io.pstr(io.idiom() + " ?");                 ///> * show not found sign
             compile = false; 
         }
     }
+    ///
+    ///> constant folding - lit..lit op => lit, for built-in pure primitives only;
+    ///  constants, values and colon words can change at run time and are kept
+    ///
+    boolean fold(Code w) {
+        int k = w.token < pure.length && dict.get(w.token) == w ? pure[w.token] : 0;
+        FV<Code> pf = dict.tail().pf;
+        int n = pf.size();
+        if (k == 0 || n < k) return false;
+        for (int i=n-k; i < n; i++) {
+            if (pf.get(i).xt != _dolit) return false;
+        }
+        Stk s0 = ss;                                    /// * run w on scratch stack
+        ss = fs; fs.clear();
+        try {
+            for (int i=n-k; i < n; i++) fs.push(pf.get(i).val);
+            w.xt.accept(this, w);
+        }
+        catch (ArithmeticException e) { return false; } /// * e.g. 1 0 /, left to run time
+        finally { ss = s0; }
+        for (int i=0; i < k; i++) pf.drop();
+        dict.compile(new Code(_dolit, "lit", fs.pop()));
+        return true;
+    }
     Code word(boolean existed) {
         String s = io.next_token();
         Code   w = dict.find(s, compile);
@@ -110,7 +201,10 @@ public class VM {
             if (w==null) io.pstr(s+"?");
         }
         else {
-            if (w!=null) io.pstr(s+" reDef?");
+            if (w!=null) {
+                io.pstr(s+" reDef?");
+                if (!dict.shared(w.token)) w.deopt();
+            }
             w = new Code(s);                            ///> create new Code
         }
         return w;
@@ -118,199 +212,320 @@ public class VM {
     Code word() { return word(false); }                 ///> read token
     Code tick() { return word(true); }                  ///> find existed word
     ///
+    ///> Forth inner interpreter - threaded code (Code tree as fallback)
+    ///
+    void call(Code w) {
+        if (halt) throw Task.STOP;
+        if (!threaded || w.tc == null) { w.nest(this); return; }
+        met.words++;
+        if (prof != null) { prof.run(this, w); return; }
+        if (w.jit == null && ++w.calls == hot) w.jit = jit.compile(w);
+        if (w.jit != null) w.jit.run(this);
+        else inner(w, 0, false);
+    }
+    void inner(Code w, int ip, boolean root) {          ///< root: fiber base, may yield
+        final int rp0 = root ? 0 : rp;                  ///< frame base (re-entrant)
+        int[] tc = w.tc;
+        int   np = 0, nw = 0;                           ///< prims, words (see Metrics)
+        try {
+            while (true) {
+                int op = tc[ip++];
+                switch (op) {
+                case TC.LIT:  ss.push(tc[ip++]);                          break;
+                case TC.BRA:  ip = tc[ip];
+                    if (halt) throw Task.STOP;                            break;
+                case TC.BRZ:
+                    if (ss.pop() != 0) { ip++; break; }
+                    ip = tc[ip];
+                    if (halt) throw Task.STOP;                            break;
+                case TC.TOR:  rs.push(ss.pop());                          break;
+                case TC.TOR2: rs.push(ss.pop()); rs.push(ss.pop());       break;
+                case TC.DO:   rs.swap();                                  break;
+                case TC.NXT: {                                  /// * for..next
+                    int i = rs.peek() - 1;
+                    if (i >= 0) { rs.poke(i); ip = tc[ip]; }
+                    else        { rs.pop();   ip++;        }
+                    if (halt) throw Task.STOP;
+                } break;
+                case TC.LOOP: {                                 /// * do..loop
+                    int i = rs.peek() + 1;
+                    if (i < rs.pick(1)) { rs.poke(i); ip = tc[ip]; }
+                    else { rs.pop(); rs.pop(); ip++; }
+                    if (halt) throw Task.STOP;
+                } break;
+                case TC.LEAVE:
+                    for (int n = tc[ip++]; n > 0; n--) rs.pop();
+                    ip = tc[ip];                                          break;
+                case TC.NODE: {
+                    Code c = w.tn[tc[ip++]];
+                    np++;
+                    c.xt.accept(this, c);
+                } break;
+                case TC.ADDL: ss.poke(ss.peek() + tc[ip++]);              break;
+                case TC.MULL: ss.poke(ss.peek() * tc[ip++]);              break;
+                case TC.SUBL: ss.poke(ss.peek() - tc[ip++]);              break;
+                case TC.OVER2:ss.over(); ss.over();                       break;
+                case TC.SQR: { int n = ss.peek(); ss.poke(n * n); }       break;
+                case TC.RAT2: ss.push(rs.peek() * 2);                     break;
+                case TC.BNZ:  ip = ss.pop() != 0 ? tc[ip] : ip + 1;       break;
+                case TC.INCD: { int n = ss.peek() + 1; ss.poke(n); ss.push(n); } break;
+                case TC.YIELD:                                  /// * after pause, ms
+                    if (!root || !pause) break;
+                    fib.w = w; fib.ip = ip; fib.rp = rp;        /// * save context
+                    return;
+                case TC.DOES:                                   /// * then return, as RET
+                    does(w.tn[tc[ip]]);
+                    if (rp == rp0) return;
+                    w  = rw[--rp];
+                    ip = ri[rp];
+                    tc = w.tc;                                            break;
+                case TC.RET:
+                    if (rp == rp0) return;
+                    w  = rw[--rp];
+                    ip = ri[rp];
+                    tc = w.tc;                                            break;
+                default: {                                      /// * dictionary word
+                    Code x = dict.get(op);
+                    if (x.xt != null) {                         /// * primitive
+                        np++;
+                        if (prof != null) prof.prim(this, x);
+                        else x.xt.accept(this, x);
+                    }
+                    else if (x.tc != null) {                    /// * colon word
+                        nw++;
+                        if (prof != null) { prof.run(this, x); break; }
+                        if (x.jit == null && ++x.calls == hot) x.jit = jit.compile(x);
+                        if (x.jit != null) { x.jit.run(this); break; }
+                        if (rp == rw.length) {
+                            rw = Arrays.copyOf(rw, rp * 2);
+                            ri = Arrays.copyOf(ri, rp * 2);
+                        }
+                        rw[rp] = w; ri[rp++] = ip;
+                        w  = x;
+                        tc = x.tc;
+                        ip = 0;
+                    }
+                    else x.nest(this);                          /// * Code tree
+                }
+                }
+            }
+        }
+        finally {
+            rp = rp0;
+            met.prims += np;
+            met.words += nw;
+        }
+    }
+    ///
     ///> ALU funtions (aka. macros)
     ///
-    int  BOOL(boolean f) { return f ? -1 : 0;     }
-    int  UINT(int v)     { return v & 0x7fffffff; }
-    void ALU(Function<Integer, Integer> m) { 
-        int n = ss.pop(); ss.push(m.apply(n));           
+    static int BOOL(boolean f) { return f ? -1 : 0;     }
+    static int UINT(int v)     { return v & 0x7fffffff; }
+    void ALU(IntUnaryOperator m) {                      ///< TOS updated in place
+        int a = ss.peek();
+        try { ss.poke(m.applyAsInt(a)); }
+        catch (RuntimeException e) { ss.pop(); throw e; }      /// * operand consumed on error
     }
-    void ALU(BiFunction<Integer, Integer, Integer> m) { 
-        int n = ss.pop(); ss.push(m.apply(ss.pop(), n)); 
+    void ALU(IntBinaryOperator m) {
+        int n = ss.pop(), a = ss.peek();
+        try { ss.poke(m.applyAsInt(a, n)); }
+        catch (RuntimeException e) { ss.pop(); throw e; }      /// * both consumed, e.g. 1 0 /
+    }
+    void   SETV(int a, int n)    { dict.setv(a, n); if (a==0) base=n; }
+    String STR(int a, int len)   { return a >= 0 ? dict.gets(a, len) : io.pad(); }
+    void   image(boolean save, String fn) {             ///< save-image, load-image
+        try {
+            if (save) Image.save(this, fn);
+            else      Image.load(this, fn);
+        }
+        catch (Exception e) { io.err(e); }
     }
-    void   SETV(int i_w, int n)  { dict.setv(i_w, n); if (i_w==0) base=n; }
-    String STR(int i_w)          { return i_w >= 0 ? dict.gets(i_w) : io.pad(); }
     ///
     ///> built-in words and macros
     ///
-    Consumer<Code> _tmp    = c -> { /* do nothing */ };
-    Consumer<Code> _dolit  = c -> ss.push(c.qf.head());
-    Consumer<Code> _dostr  = c -> {
-        ss.push(c.token);
-        ss.push(STR(c.token).length());
+    static final BiConsumer<VM, Code> _tmp    = (vm, c) -> { /* do nothing */ };
+    static final BiConsumer<VM, Code> _dolit  = (vm, c) -> vm.ss.push(c.val);
+    static final BiConsumer<VM, Code> _dostr  = (vm, c) -> {              /// -- a len
+        vm.ss.push(c.token);
+        vm.ss.push(c.val);
+    };
+    static final BiConsumer<VM, Code> _dotstr = (vm, c) -> vm.io.pstr(c.str);
+    static final BiConsumer<VM, Code> _branch = (vm, c) -> c.branch(vm);
+    static final BiConsumer<VM, Code> _begin  = (vm, c) -> c.begin(vm);
+    static final BiConsumer<VM, Code> _for    = (vm, c) -> c.dofor(vm);
+    static final BiConsumer<VM, Code> _loop   = (vm, c) -> c.loop(vm);
+    static final BiConsumer<VM, Code> _tor    = (vm, c) -> vm.rs.push(vm.ss.pop());
+    static final BiConsumer<VM, Code> _tor2   = (vm, c) -> { vm.rs.push(vm.ss.pop()); vm.rs.push(vm.ss.pop()); };
+    static final BiConsumer<VM, Code> _dovar  = (vm, c) -> vm.ss.push(c.token);
+    static final BiConsumer<VM, Code> _pdo    = (vm, c) -> Task.pdo(vm, c);
+    static final BiConsumer<VM, Code> _pause  = (vm, c) -> Fiber.pause(vm);
+    static final BiConsumer<VM, Code> _ms     = (vm, c) -> Fiber.ms(vm, vm.ss.pop());
+    static final BiConsumer<VM, Code> _dodoes = (vm, c) -> {
+        vm.does(c);
+        vm.unnest = true;                      /// exit nest
     };
-    Consumer<Code> _dotstr = c -> io.pstr(c.str);
-    Consumer<Code> _branch = c -> c.branch(ss);
-    Consumer<Code> _begin  = c -> c.begin(ss);
-    Consumer<Code> _for    = c -> c.dofor(rs);
-    Consumer<Code> _loop   = c -> c.loop(rs);
-    Consumer<Code> _tor    = c -> rs.push(ss.pop());
-    Consumer<Code> _tor2   = c -> { rs.push(ss.pop()); rs.push(ss.pop()); };
-    Consumer<Code> _dovar  = c -> ss.push(c.token);
-    Consumer<Code> _dodoes = c -> {
+    static final BiConsumer<VM, Code> _unnest = (vm, c) -> vm.unnest = true;
+    void does(Code c) {
         boolean hit = false;
         for(Code w : dict.get(c.token).pf) {   /// * scan through defining word
             if (w==c) hit = true;              /// does> ...
             else if (hit) dict.compile(w);     /// capture words
         }
-        c.unnest();                            /// exit nest
-    };
+    }
     void ADD_W(Code w)                    { dict.compile(w);                 }
-    void CODE(String n, Consumer<Code> f) { dict.add(new Code(n, f, false)); }
-    void IMMD(String n, Consumer<Code> f) { dict.add(new Code(n, f, true));  }
+    static void CODE(String n, BiConsumer<VM, Code> f) { CORE.add(new Code(n, f, false)); }
+    static void IMMD(String n, BiConsumer<VM, Code> f) { CORE.add(new Code(n, f, true));  }
     void BRAN(FV<Code> pf) { Code t=dict.tail(); pf.merge(t.pf); t.pf.clear(); }
     ///
-    ///> create dictionary - built-in words
+    ///> create core dictionary - built-in words, once per process; primitives
+    ///  take the running VM so the same Code objects serve every instance
     ///
-    void dict_init() {
-        CODE("bye",   c -> run = false               );
+    static {
+        dict_init();
+        fuse = TC.fusion(CORE);
+        pure = new int[CORE.size()];
+        for (int i=0, k=1; i < PURE.length; i++) {
+            if (PURE[i] == null) k++;
+            else pure[CORE.find(PURE[i], false).token] = k;
+        }
+    }
+    static void dict_init() {
+        CODE("bye",   (vm, c) -> vm.run = false      );
         ///
         /// @defgroup ALU ops
         /// @{
-        CODE("+",     c -> ALU((a,b) -> a + b)       );
-        CODE("*",     c -> ALU((a,b) -> a * b)       );
-        CODE("-",     c -> ALU((a,b) -> a - b)       );
-        CODE("/",     c -> ALU((a,b) -> a / b)       );
-        CODE("mod",   c -> ALU((a,b) -> a % b)       );
-        CODE("*/",    c -> {
-            int n = ss.pop();
-            ss.push(ss.pop() * ss.pop() / n);
-        });
-        CODE("*/mod", c -> { 
-            int n = ss.pop(), m = ss.pop()*ss.pop();
-            ss.push(m % n);
-            ss.push(m / n);
-        });
-        CODE("and",   c -> ALU((a,b) -> a & b)       );
-        CODE("or",    c -> ALU((a,b) -> a | b)       );
-        CODE("xor",   c -> ALU((a,b) -> a ^ b)       );
-        CODE("abs",   c -> ALU(a -> abs(a))          );
-        CODE("negate",c -> ALU(a -> -a)              );
-        CODE("invert",c -> ALU(a -> ~UINT(a))        );
-        CODE("rshift",c -> ALU((a,b) -> a >>> b)     );
-        CODE("lshift",c -> ALU((a,b) -> a << b)      );
-        CODE("max",   c -> ALU((a,b) -> max(a,b))    );
-        CODE("min",   c -> ALU((a,b) -> min(a,b))    );
-        CODE("2*",    c -> ALU(a -> a *= 2)          );
-        CODE("2/",    c -> ALU(a -> a /= 2)          );
-        CODE("1+",    c -> ALU(a -> a += 1)          );
-        CODE("1-",    c -> ALU(a -> a -= 1)          );
+        CODE("+",     (vm, c) -> vm.ALU((a,b) -> a + b)    );
+        CODE("*",     (vm, c) -> vm.ALU((a,b) -> a * b)    );
+        CODE("-",     (vm, c) -> vm.ALU((a,b) -> a - b)    );
+        CODE("/",     (vm, c) -> vm.ALU((a,b) -> a / b)    );
+        CODE("mod",   (vm, c) -> vm.ALU((a,b) -> a % b)    );
+        CODE("*/",    (vm, c) -> {
+            int n = vm.ss.pop();
+            vm.ss.push(vm.ss.pop() * vm.ss.pop() / n);
+        });
+        CODE("*/mod", (vm, c) -> { 
+            int n = vm.ss.pop(), m = vm.ss.pop()*vm.ss.pop();
+            vm.ss.push(m % n);
+            vm.ss.push(m / n);
+        });
+        CODE("and",   (vm, c) -> vm.ALU((a,b) -> a & b)    );
+        CODE("or",    (vm, c) -> vm.ALU((a,b) -> a | b)    );
+        CODE("xor",   (vm, c) -> vm.ALU((a,b) -> a ^ b)    );
+        CODE("abs",   (vm, c) -> vm.ALU(a -> abs(a))       );
+        CODE("negate",(vm, c) -> vm.ALU(a -> -a)           );
+        CODE("invert",(vm, c) -> vm.ALU(a -> ~UINT(a))     );
+        CODE("rshift",(vm, c) -> vm.ALU((a,b) -> a >>> b)  );
+        CODE("lshift",(vm, c) -> vm.ALU((a,b) -> a << b)   );
+        CODE("max",   (vm, c) -> vm.ALU((a,b) -> max(a,b)) );
+        CODE("min",   (vm, c) -> vm.ALU((a,b) -> min(a,b)) );
+        CODE("2*",    (vm, c) -> vm.ALU(a -> a *= 2)       );
+        CODE("2/",    (vm, c) -> vm.ALU(a -> a /= 2)       );
+        CODE("1+",    (vm, c) -> vm.ALU(a -> a += 1)       );
+        CODE("1-",    (vm, c) -> vm.ALU(a -> a -= 1)       );
         /// @}
         /// @defgroup Logic ops
         /// @{
-        CODE("0=",    c -> ALU(a -> BOOL(a==0))      );
-        CODE("0<",    c -> ALU(a -> BOOL(a < 0))     );
-        CODE("0>",    c -> ALU(a -> BOOL(a > 0))     );
-        CODE("=",     c -> ALU((a,b) -> BOOL(a==b))  );
-        CODE(">",     c -> ALU((a,b) -> BOOL(a > b)) );
-        CODE("<",     c -> ALU((a,b) -> BOOL(a < b)) );
-        CODE("<>",    c -> ALU((a,b) -> BOOL(a!=b))  );
-        CODE(">=",    c -> ALU((a,b) -> BOOL(a>=b))  );
-        CODE("<=",    c -> ALU((a,b) -> BOOL(a>=b))  );
-        CODE("u<",    c -> ALU((a,b) -> BOOL(UINT(a) < UINT(b))));
-        CODE("u>",    c -> ALU((a,b) -> BOOL(UINT(a) > UINT(b))));
+        CODE("0=",    (vm, c) -> vm.ALU(a -> BOOL(a==0))      );
+        CODE("0<",    (vm, c) -> vm.ALU(a -> BOOL(a < 0))     );
+        CODE("0>",    (vm, c) -> vm.ALU(a -> BOOL(a > 0))     );
+        CODE("=",     (vm, c) -> vm.ALU((a,b) -> BOOL(a==b))  );
+        CODE(">",     (vm, c) -> vm.ALU((a,b) -> BOOL(a > b)) );
+        CODE("<",     (vm, c) -> vm.ALU((a,b) -> BOOL(a < b)) );
+        CODE("<>",    (vm, c) -> vm.ALU((a,b) -> BOOL(a!=b))  );
+        CODE(">=",    (vm, c) -> vm.ALU((a,b) -> BOOL(a>=b))  );
+        CODE("<=",    (vm, c) -> vm.ALU((a,b) -> BOOL(a>=b))  );
+        CODE("u<",    (vm, c) -> vm.ALU((a,b) -> BOOL(UINT(a) < UINT(b))));
+        CODE("u>",    (vm, c) -> vm.ALU((a,b) -> BOOL(UINT(a) > UINT(b))));
         /// @}
         /// @defgroup Data Stack ops
         /// @brief - opcode sequence can be changed below this line
         /// @{
-        CODE("dup",   c -> ss.push(ss.peek())               );
-        CODE("drop",  c -> ss.pop()                         );
-        CODE("over",  c -> ss.push(ss.get(ss.size()-2))     );
-        CODE("swap",  c -> ss.add(ss.size()-2,ss.pop())     );
-        CODE("rot",   c -> ss.push(ss.remove(ss.size()-3))  );
-        CODE("-rot",  c -> {
-            ss.push(ss.remove(ss.size()-3));
-            ss.push(ss.remove(ss.size()-3));
-        });
-        CODE("pick",  c -> {
-            int i = ss.pop(), n = ss.get(ss.size()-i-1);
-            ss.push(n);
-        });
-        CODE("roll",  c -> {
-            int i = ss.pop(), n = ss.remove(ss.size()-i-1);
-            ss.push(n);
-        });
-        CODE("nip",   c -> ss.remove(ss.size()-2)           );
-        CODE("?dup",  c -> {
-            if (ss.peek()!=0) ss.push(ss.peek());
+        CODE("dup",   (vm, c) -> vm.ss.push(vm.ss.peek())   );
+        CODE("drop",  (vm, c) -> vm.ss.pop()                );
+        CODE("over",  (vm, c) -> vm.ss.over()               );
+        CODE("swap",  (vm, c) -> vm.ss.swap()               );
+        CODE("rot",   (vm, c) -> vm.ss.roll(2)              );
+        CODE("-rot",  (vm, c) -> vm.ss.unroll(2)            );
+        CODE("pick",  (vm, c) -> {
+            int i = vm.ss.pop(); vm.ss.push(vm.ss.pick(i));
+        });
+        CODE("roll",  (vm, c) -> vm.ss.roll(vm.ss.pop())    );
+        CODE("nip",   (vm, c) -> vm.ss.nip()                );
+        CODE("?dup",  (vm, c) -> {
+            if (vm.ss.peek()!=0) vm.ss.push(vm.ss.peek());
         });
         /// @}
         /// @defgroup Data Stack ops - double
         /// @{
-        CODE("2dup",  c -> {
-            ss.push(ss.get(ss.size()-2));
-            ss.push(ss.get(ss.size()-2));
-        });
-        CODE("2drop", c -> { ss.pop(); ss.pop(); }         );
-        CODE("2swap", c -> {
-            ss.push(ss.remove(ss.size()-4));
-            ss.push(ss.remove(ss.size()-4));
-        });
-        CODE("2over", c -> {
-            ss.push(ss.get(ss.size()-4));
-            ss.push(ss.get(ss.size()-4));
+        CODE("2dup",  (vm, c) -> { vm.ss.over(); vm.ss.over(); }   );
+        CODE("2drop", (vm, c) -> { vm.ss.pop(); vm.ss.pop(); }     );
+        CODE("2swap", (vm, c) -> { vm.ss.roll(3); vm.ss.roll(3); } );
+        CODE("2over", (vm, c) -> {
+            vm.ss.push(vm.ss.pick(3));
+            vm.ss.push(vm.ss.pick(3));
         });
         /// @}
         /// @defgroup Return Stack ops
         /// @{
-        CODE(">r",    c -> rs.push(ss.pop())               );
-        CODE("r>",    c -> ss.push(rs.pop())               );
-        CODE("r@",    c -> ss.push(rs.peek())              );
-        CODE("i",     c -> ss.push(rs.peek())              );
+        CODE(">r",    (vm, c) -> vm.rs.push(vm.ss.pop())   );
+        CODE("r>",    (vm, c) -> vm.ss.push(vm.rs.pop())   );
+        CODE("r@",    (vm, c) -> vm.ss.push(vm.rs.peek())  );
+        CODE("i",     (vm, c) -> vm.ss.push(vm.rs.peek())  );
         /// @}
         /// @defgroup Return Stack ops - Extra
         /// @{
-        CODE("push",  c -> rs.push(ss.pop())               );
-        CODE("pop",   c -> ss.push(rs.pop())               );
+        CODE("push",  (vm, c) -> vm.rs.push(vm.ss.pop())   );
+        CODE("pop",   (vm, c) -> vm.ss.push(vm.rs.pop())   );
         /// @}
         /// @defgroup IO ops
         /// @{
-        CODE("base",  c->ss.push(0)                        );
-        CODE("hex",   c -> dict.get(0).set_var(0, base=16) );
-        CODE("decimal",c-> dict.get(0).set_var(0, base=10) );
-        CODE("cr",    c -> io.cr()                         );
-        CODE("bl",    c -> io.bl()                         );
-        CODE(".",     c -> io.dot(IO.OP.DOT, ss.pop(), base) );
-        CODE("u.",    c -> io.dot(IO.OP.UDOT, ss.pop(), base));
-        CODE(".r",    c -> {
-            int r = ss.pop(), n = ss.pop();
-            io.dot(IO.OP.DOTR, n, r, base);
-        });
-        CODE("u.r",   c -> {
-            int r = ss.pop(), n = ss.pop();
-            io.dot(IO.OP.UDOTR, n, r, base);
-        });
-        CODE("type",  c-> {
-            ss.pop(); int i_w = ss.pop();                  ///< drop len, get index
-            io.pstr(STR(i_w));
-        });
-        CODE("key",   c -> io.key()                       );
-        CODE("emit",  c -> io.dot(IO.OP.EMIT, ss.pop())   );
-        CODE("space", c -> io.spaces(1)                   );
-        CODE("spaces",c -> io.spaces(ss.pop())            );
+        CODE("base",  (vm, c) -> vm.ss.push(0)             );
+        CODE("hex",   (vm, c) -> vm.dict.setv(0, vm.base=16)  );
+        CODE("decimal",(vm, c) -> vm.dict.setv(0, vm.base=10) );
+        CODE("cr",    (vm, c) -> vm.io.cr()                );
+        CODE("bl",    (vm, c) -> vm.io.bl()                );
+        CODE(".",     (vm, c) -> vm.io.dot(IO.OP.DOT, vm.ss.pop(), vm.base) );
+        CODE("u.",    (vm, c) -> vm.io.dot(IO.OP.UDOT, vm.ss.pop(), vm.base));
+        CODE(".r",    (vm, c) -> {
+            int r = vm.ss.pop(), n = vm.ss.pop();
+            vm.io.dot(IO.OP.DOTR, n, r, vm.base);
+        });
+        CODE("u.r",   (vm, c) -> {
+            int r = vm.ss.pop(), n = vm.ss.pop();
+            vm.io.dot(IO.OP.UDOTR, n, r, vm.base);
+        });
+        CODE("type",  (vm, c) -> {
+            int n = vm.ss.pop(), a = vm.ss.pop();          ///< len, address
+            vm.io.pstr(vm.STR(a, n));
+        });
+        CODE("key",   (vm, c) -> vm.io.key()                        );
+        CODE("emit",  (vm, c) -> vm.io.dot(IO.OP.EMIT, vm.ss.pop()) );
+        CODE("space", (vm, c) -> vm.io.spaces(1)                    );
+        CODE("spaces",(vm, c) -> vm.io.spaces(vm.ss.pop())          );
         /// @}
         /// @defgroup Literal ops
         /// @{
-        IMMD("(",     c -> io.scan("\\)")                 );
-        IMMD(".(",    c -> {
-            io.scan("\\)"); io.pstr(io.pad());
-        });
-        IMMD("\\",    c -> io.scan("\n")                  );
-        IMMD("s\"",   c -> {                               /// -- w a
-            String s = io.scan("\""); if (s==null) return;
-            if (compile) {
+        IMMD("(",     (vm, c) -> vm.io.scan(')')          );
+        IMMD(".(",    (vm, c) -> {
+            vm.io.scan(')'); vm.io.pstr(vm.io.pad());
+        });
+        IMMD("\\",    (vm, c) -> vm.io.scan('\n')         );
+        IMMD("s\"",   (vm, c) -> {                         /// -- w a
+            String s = vm.io.scan('"'); if (s==null) return;
+            if (vm.compile) {
                 Code w = new Code(_dostr, "s\"", s);
-                ADD_W(w);                                  /// literal=s
-                w.token = dict.idx();
+                vm.ADD_W(w);                               /// literal=s
+                w.token = vm.dict.puts(s);                 /// * kept in data space
+                w.val   = s.length();
             }
-            else { ss.push(-1); ss.push(s.length()); }     /// use pad
+            else { vm.ss.push(-1); vm.ss.push(s.length()); } /// use pad
         });
-        IMMD(".\"",   c -> {
-            String s = io.scan("\""); if (s==null) return;
-            if (compile) {
-                ADD_W(new Code(_dotstr, ".\"", s));        /// literal=s
+        IMMD(".\"",   (vm, c) -> {
+            String s = vm.io.scan('"'); if (s==null) return;
+            if (vm.compile) {
+                vm.ADD_W(new Code(_dotstr, ".\"", s));     /// literal=s
             }
-            else io.pstr(s);
+            else vm.io.pstr(s);
         });
         /// @}
         /// @defgroup Branching ops
@@ -320,206 +535,287 @@ public class VM {
         ///                               \-->p1[...] else   |
         ///     dict[-1]->pf[...] as *tmp -------------------+
         /// @{
-        IMMD("if",    c -> { 
-            ADD_W(new Code(_branch, "if"));                /// literal=s
-            dict.add(new Code(_tmp, ""));
+        IMMD("if",    (vm, c) -> { 
+            vm.ADD_W(new Code(_branch, "if"));             /// literal=s
+            vm.dict.add(new Code(_tmp, ""));
         });
-        IMMD("else",  c -> {
-            Code b = dict.bran();
-            BRAN(b.pf);
+        IMMD("else",  (vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.pf);
             b.stage = 1; 
         });
-        IMMD("then",  c -> {
-            Code b = dict.bran();                          ///< branching target
+        IMMD("then",  (vm, c) -> {
+            Code b = vm.dict.bran();                       ///< branching target
             int  s = b.stage;                              ///< branching state
             if (s==0) {                                    /// * if..{pf}..then
-                BRAN(b.pf); dict.drop();
+                vm.BRAN(b.pf); vm.dict.drop();
             } 
             else {                                         /// * else..{p1}..then, or
-                BRAN(b.p1);                                /// * then..{p1}..next
-                if (s==1) dict.drop();                     /// * if..else..then
+                vm.BRAN(b.p1);                             /// * then..{p1}..next
+                if (s==1) vm.dict.drop();                  /// * if..else..then
             }
         });
         /// @}
         /// @defgroup Loops
         /// @brief  - begin...again, begin...f until, begin...f while...repeat
         /// @{
-        IMMD("begin", c -> { 
-            ADD_W(new Code(_begin, "begin"));              /// * branch targer
-            dict.add(new Code(_tmp, ""));
+        IMMD("begin", (vm, c) -> { 
+            vm.ADD_W(new Code(_begin, "begin"));           /// * branch targer
+            vm.dict.add(new Code(_tmp, ""));
         });
-        IMMD("while", c -> {
-            Code b = dict.bran();
-            BRAN(b.pf);                                    /// * begin..{pf}..f.while
+        IMMD("while", (vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.pf);                                 /// * begin..{pf}..f.while
             b.stage = 2; 
         });
-        IMMD("repeat",c -> {
-            Code b = dict.bran();
-            BRAN(b.p1); dict.drop();                       /// * while..{p1}..repeat
+        IMMD("repeat",(vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.p1); vm.dict.drop();                 /// * while..{p1}..repeat
         });
-        IMMD("again", c -> {
-            Code b = dict.bran();
-            BRAN(b.pf); dict.drop();                       /// * begin..{pf}..again
+        IMMD("again", (vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.pf); vm.dict.drop();                 /// * begin..{pf}..again
             b.stage=1;
         });
-        IMMD("until", c -> {
-            Code b = dict.bran();
-            BRAN(b.pf); dict.drop();                       /// * begin..{pf}..f.until
+        IMMD("until", (vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.pf); vm.dict.drop();                 /// * begin..{pf}..f.until
         });
         /// @}
         /// @defgrouop FOR loops
         /// @brief  - for...next, for...aft...then...next
         /// @{
-        IMMD("for",  c -> {
-            ADD_W(new Code(_tor, "tor"));
-            ADD_W(new Code(_for, "for"));
-            dict.add(new Code(_tmp, ""));
-        });
-        IMMD("aft",  c -> {
-            Code b = dict.bran();
-            BRAN(b.pf);
+        IMMD("for",  (vm, c) -> {
+            vm.ADD_W(new Code(_tor, "tor"));
+            vm.ADD_W(new Code(_for, "for"));
+            vm.dict.add(new Code(_tmp, ""));
+        });
+        IMMD("aft",  (vm, c) -> {
+            Code b = vm.dict.bran();
+            vm.BRAN(b.pf);
             b.stage = 3; 
         });
-        IMMD("next", c -> {
-            Code b = dict.bran();                         /// * for..{pf}..next, or
-            BRAN(b.stage==0 ? b.pf : b.p2); dict.drop();  /// * then..{p2}..next
+        IMMD("next", (vm, c) -> {
+            Code b = vm.dict.bran();                      /// * for..{pf}..next, or
+            vm.BRAN(b.stage==0 ? b.pf : b.p2); vm.dict.drop(); /// * then..{p2}..next
         });
         /// @}
         /// @defgrouop DO loops
         /// @brief  - do...loop, do..leave..loop
         /// @{
-        IMMD("do",   c -> {
-             ADD_W(new Code(_tor2, "tor2"));              ///< ( limit first -- )
-             ADD_W(new Code(_loop, "do"));
-             dict.add(new Code(_tmp, ""));
-        });
-        CODE("leave", c -> c.unnest());                   /// * exit loop
-        IMMD("loop", c -> {
-             Code b = dict.bran();
-             BRAN(b.pf);                                  /// * do..{pf}..loop
-             dict.drop();
+        IMMD("do",   (vm, c) -> {
+             vm.ADD_W(new Code(_tor2, "tor2"));           ///< ( limit first -- )
+             vm.ADD_W(new Code(_loop, "do"));
+             vm.dict.add(new Code(_tmp, ""));
+        });
+        CODE("leave", _unnest);                           /// * exit loop
+        IMMD("loop", (vm, c) -> {
+             Code b = vm.dict.bran();
+             vm.BRAN(b.pf);                               /// * do..{pf}..loop
+             vm.dict.drop();
+        });
+        IMMD("pdo",  (vm, c) -> {
+             vm.ADD_W(new Code(_pdo, "pdo"));             ///< ( limit first -- ) across cores
+             vm.dict.add(new Code(_tmp, ""));
+        });
+        IMMD("ploop",(vm, c) -> {
+             Code b = vm.dict.bran();
+             vm.BRAN(b.pf);                               /// * pdo..{pf}..ploop
+             vm.dict.drop();
+             Task.pdo_init(vm, b);
         });
         /// @}
         /// @defgrouop Compiler ops
         /// @{
-        CODE("[",     c -> compile = false                );
-        CODE("]",     c -> compile = true                 );
-        CODE(":",     c -> {
-            dict.add(word()); compile = true;
-        });
-        IMMD(";",     c -> compile = false                );
-        CODE("variable", c -> {
-            dict.add(word());
-            Code w  = new Code(_dovar, "var", 0);
-            ADD_W(w);
-            w.token = dict.idx();
-        });
-        CODE("constant", c -> {                                    /// n --
-            dict.add(word());
-            Code w = new Code(_dolit, "lit", ss.pop());
-            ADD_W(w);
-            w.token = dict.idx();
-        });
-        CODE("postpone", c -> {
-            Code w = tick(); if (w!=null) ADD_W(w);
-        });
-        CODE("immediate",c -> dict.tail().immediate()     );
-        CODE("exit",  c -> c.unnest()                     );       /// marker to exit interpreter
-        CODE("exec",  c -> dict.get(ss.pop()).nest()      );
-        CODE("create",c -> {
-            dict.add(word());
-            Code w = new Code(_dovar, "var", 0);
-            ADD_W(w);
-            w.token = dict.idx();
-            w.qf.drop();
-        });
-        IMMD("does>", c -> {                                       /// n --
+        CODE("[",     (vm, c) -> vm.compile = false       );
+        CODE("]",     (vm, c) -> vm.compile = true        );
+        CODE(":",     (vm, c) -> {
+            vm.dict.add(vm.word()); vm.compile = true;
+        });
+        IMMD(";",     (vm, c) -> {
+            if (vm.compile && vm.threaded) TC.compile(vm, vm.dict.tail());
+            vm.compile = false;
+        });
+        CODE("variable", (vm, c) -> {
+            vm.dict.add(vm.word());
+            Code w  = new Code(_dovar, "var");
+            vm.ADD_W(w);
+            w.token = vm.dict.allot(1);                            /// * address of cell
+        });
+        CODE("constant", (vm, c) -> {                              /// n --
+            vm.dict.add(vm.word());
+            vm.ADD_W(new Code(_dolit, "lit", vm.ss.pop()));
+        });
+        CODE("postpone", (vm, c) -> {
+            Code w = vm.tick(); if (w!=null) vm.ADD_W(w);
+        });
+        CODE("immediate",(vm, c) -> vm.dict.own(vm.dict.size() - 1).immediate());
+        CODE("exit",  _unnest                             );       /// marker to exit interpreter
+        CODE("exec",  (vm, c) -> vm.call(vm.dict.get(vm.ss.pop())) );
+        CODE("create",(vm, c) -> {
+            vm.dict.add(vm.word());
+            Code w = new Code(_dovar, "var");
+            vm.ADD_W(w);
+            w.token = vm.dict.hp;                                  /// * data follows, see , allot
+        });
+        IMMD("does>", (vm, c) -> {                                 /// n --
             Code w = new Code(_dodoes, "does>");
-            ADD_W(w);
-            w.token = dict.tail().token;                           /// * point to new word
-        });
-        CODE("to",   c -> {                                        /// n -- , compile only
-            Code w = tick(); if (w==null) return;
-            w.set_var(0, ss.pop());
-        });
-        CODE("is",   c -> {                                        /// w -- , execute only
-            Code w   = tick(); if (w==null) return;
-            Code src = dict.get(ss.pop());                         /// source word
-            dict.get(w.token).pf = src.pf; 
+            vm.ADD_W(w);
+            w.token = vm.dict.tail().token;                        /// * point to new word
+        });
+        CODE("to",   (vm, c) -> {                                  /// n -- , compile only
+            Code w = vm.tick(); if (w==null) return;
+            Code v = w.pf.head();
+            if (v.xt == _dovar) vm.SETV(v.token, vm.ss.pop());     /// * variable
+            else                v.val = vm.ss.pop();               /// * constant
+        });
+        CODE("is",   (vm, c) -> {                                  /// w -- , execute only
+            Code w   = vm.tick(); if (w==null) return;
+            Code src = vm.dict.get(vm.ss.pop());                   /// source word
+            Code dst = vm.dict.own(w.token);                       /// * copy if core
+            dst.pf = src.pf;
+            dst.tc = src.tc;                                       /// * threaded code too
+            dst.tn = src.tn;
+            dst.deopt();
         });
         /// @}
         /// @defgroup Memory Access ops
         /// @note:
-        ///   allot allocate elements in a word's q[] array
-        ///   to access, both indices to word itself and to q array are needed
-        ///   'th' a word that compose i_w, a 32-bit value, the 16 high bits
-        ///   serves as the q index and lower 16 lower bit as word index
-        ///   so a variable (array with 1 element) can be access as usual
+        ///   cells live in one int[] data space (Dict.mem), addressed by plain
+        ///   cell index; variable/create push the address of their first cell,
+        ///   allot/, extend from here and 'th' indexes an array, i.e. v 2 th @
         ///
         /// @{
-        CODE("@",  c -> ss.push(dict.getv(ss.pop()))      );       /// w -- n
-        CODE("!",  c -> {                                          /// n w --
-            int i_w = ss.pop(), n = ss.pop();
-            SETV(i_w, n);
-        });
-        CODE("+!", c -> {                                          /// n w --
-            int  i_w = ss.pop(), n = dict.getv(i_w) + ss.pop();
-            SETV(i_w, n);
-        });
-        CODE("?",  c -> io.dot(IO.OP.DOT, dict.getv(ss.pop())) );  /// w --
-        CODE(",",  c -> dict.tail().comma(ss.pop())       );       /// n -- 
-        CODE("cells",c -> { /* backward compatible */ }   );       /// --
-        CODE("allot",c -> {                                        /// n --
-            int  n = ss.pop(); 
-            Code w = dict.tail();
-            for (int i=0; i < n; i++) w.comma(0);
-        });
-        CODE("th", c -> {                                          /// w i -- i_w
-            int i = ss.pop() << 16; ss.push(i | ss.pop());         /// i.e. 4 v 2 th !
+        CODE("@",  (vm, c) -> vm.ss.push(vm.dict.getv(vm.ss.pop())) );       /// a -- n
+        CODE("!",  (vm, c) -> {                                    /// n a --
+            int a = vm.ss.pop(), n = vm.ss.pop();
+            vm.SETV(a, n);
+        });
+        CODE("+!", (vm, c) -> {                                    /// n a --
+            int  a = vm.ss.pop(), n = vm.dict.getv(a) + vm.ss.pop();
+            vm.SETV(a, n);
+        });
+        CODE("?",  (vm, c) -> vm.io.dot(IO.OP.DOT, vm.dict.getv(vm.ss.pop())) );  /// a --
+        CODE(",",  (vm, c) -> vm.dict.comma(vm.ss.pop())      );       /// n -- 
+        CODE("cells",(vm, c) -> { /* backward compatible */ } );       /// --
+        CODE("allot",(vm, c) -> vm.dict.allot(vm.ss.pop())    );       /// n --
+        CODE("th", (vm, c) -> {                                    /// a i -- a+i
+            int i = vm.ss.pop(); vm.ss.push(vm.ss.pop() + i);      /// i.e. 4 v 2 th !
+        });
+        CODE("fill", (vm, c) -> {                                  /// a n v --
+            int v = vm.ss.pop(), n = vm.ss.pop();
+            vm.dict.fill(vm.ss.pop(), n, v);
+        });
+        CODE("erase",(vm, c) -> {                                  /// a n --
+            int n = vm.ss.pop();
+            vm.dict.fill(vm.ss.pop(), n, 0);
+        });
+        CODE("move", (vm, c) -> {                                  /// a1 a2 n --
+            int n = vm.ss.pop(), b = vm.ss.pop();
+            vm.dict.move(vm.ss.pop(), b, n);
         });
         /// @}
         /// @defgroup System/OS ops
         /// @{
-        IMMD("dir",   c -> io.dir(io.next_token())                 );
-        IMMD("cd",    c -> io.cd(io.next_token())                  );
-        IMMD("pwd",   c -> io.pwd()                                );
+        IMMD("dir",   (vm, c) -> vm.io.dir(vm.io.next_token())     );
+        IMMD("cd",    (vm, c) -> vm.io.cd(vm.io.next_token())      );
+        IMMD("pwd",   (vm, c) -> vm.io.pwd()                       );
         IMMD("include",                                            /// include an OS file
-             c -> io.load(io.next_token(), this::outer)
+             (vm, c) -> Cache.include(vm, vm.io.next_token())
         );
-        CODE("included",c -> {                                     /// include a file (programmable)
-             ss.pop();
-             io.load(STR(ss.pop()), this::outer);
-        });
-        CODE("ok",    c -> io.mstat()                              );
-        CODE("clock", c -> ss.push((int)System.currentTimeMillis()));
-        CODE("rnd",   c -> ALU(a -> rnd.nextInt(a))                );
-        CODE("ms",    c -> {                                       /// n -- delay n ms
-            try { Thread.sleep(ss.pop()); } 
-            catch (Exception e) { io.err(e); }
-        });
-        CODE("java",  c -> {
-            int len = ss.pop(), i_w = ss.pop();                    /// strlen, not used
-            java_api.onPost(PostType.FORTH ,STR(i_w));
+        CODE("included",(vm, c) -> {                               /// include a file (programmable)
+             int n = vm.ss.pop();
+             Cache.include(vm, vm.STR(vm.ss.pop(), n));
+        });
+        CODE("ok",    (vm, c) -> vm.io.mstat()                     );
+        CODE("clock", (vm, c) -> vm.ss.push((int)System.currentTimeMillis()));
+        CODE("ns",    (vm, c) -> vm.ss.push((int)System.nanoTime()) );    /// -- n, low 32 bits, differences good for 2s
+        CODE("bench", (vm, c) -> {                                 /// xt n -- , ns/op stats of xt
+            int n = vm.ss.pop();
+            Metrics.bench(vm, vm.dict.get(vm.ss.pop()), n);
+        });
+        CODE("rnd",   (vm, c) -> vm.ALU(a -> vm.rnd.nextInt(a))    );
+        CODE("ms",    _ms                                          ); /// n -- delay n ms, fibers run
+        CODE("save-image", (vm, c) -> vm.image(true,  vm.io.next_token()) );
+        CODE("load-image", (vm, c) -> vm.image(false, vm.io.next_token()) );
+        CODE("java",  (vm, c) -> {
+            int len = vm.ss.pop(), i_w = vm.ss.pop();              /// strlen, address
+            vm.java_api.onPost(PostType.FORTH ,vm.STR(i_w, len));
         });
+        /// @}
+        /// @defgroup Multitasking ops
+        /// @{
+        CODE("task",  (vm, c) -> vm.ss.push(Task.create(vm, vm.ss.pop())) ); /// w -- t
+        CODE("rank",  (vm, c) -> vm.ss.push(vm.id)                 );
+        CODE("start", (vm, c) -> Task.start(vm, vm.ss.pop())       );
+        CODE("join",  (vm, c) -> Task.join(vm, vm.ss.pop())        );
+        CODE("stop",  (vm, c) -> Task.stop(vm, vm.ss.pop())        );
+        CODE("send",  (vm, c) -> Task.send(vm, true)               ); /// v1 .. vn n t --
+        CODE("send?", (vm, c) -> Task.send(vm, false)              ); /// v1 .. vn n t -- v1 .. vn n t 0 | -1
+        CODE("recv",  (vm, c) -> Task.recv(vm, true)               ); /// -- v1 .. vn
+        CODE("recv?", (vm, c) -> Task.recv(vm, false)              ); /// -- v1 .. vn -1 | 0
+        CODE("bcast", (vm, c) -> Task.bcast(vm)                    ); /// v1 .. vn n --
+        CODE("pull",  (vm, c) -> Task.pull(vm)                     ); /// n t -- v1 .. vn
+        CODE("fiber", (vm, c) -> vm.ss.push(Fiber.spawn(vm, vm.ss.pop())) ); /// w -- f
+        CODE("pause", _pause                                       );
+        CODE("kill",  (vm, c) -> Fiber.kill(vm, vm.ss.pop())       );
+        CODE("timer", (vm, c) -> vm.isr.enable(vm.ss.pop() != 0)   ); /// f --
+        CODE("tmisr", (vm, c) -> {                                 /// w period --
+            int n = vm.ss.pop();
+            vm.isr.add(vm.dict.get(vm.ss.pop()), n);
+        });
+        CODE(".isr",  (vm, c) -> vm.isr.dump(vm.io)                );
         /// @defgroup Debug ops
         /// @{
-        CODE("here",  c -> ss.push(Code.fence)                     );
-        CODE("'",     c -> { 
-            Code w = tick(); if (w!=null) ss.push(w.token);
-        });
-        CODE(".s",    c -> io.ss_dump(ss, base)                    );
-        CODE("words", c -> io.words(dict)                          );
-        CODE("see",   c -> io.see(tick(), base, 0)                 );
-        CODE("depth", c -> ss.push(ss.size())                      );
-        CODE("r",     c -> ss.push(rs.size())                      );
-        CODE("forget", c -> {
-            Code m = dict.find("boot", compile);
-            Code w = tick(); if (w==null) return;
-            dict.forget(max(w.token, m.token + 1));
-        });
-        CODE("boot",   c -> {
-            int t = dict.find("boot", compile).token + 1;
-            dict.forget(t);
+        CODE("here",  (vm, c) -> vm.ss.push(vm.dict.hp)            );
+        CODE("'",     (vm, c) -> { 
+            Code w = vm.tick(); if (w!=null) vm.ss.push(w.token);
+        });
+        CODE(".s",    (vm, c) -> vm.io.ss_dump(vm.ss, vm.base)     );
+        CODE("words", (vm, c) -> vm.io.words(vm.dict)              );
+        CODE("threaded", (vm, c) -> vm.threaded = vm.ss.pop() != 0 );   /// f -- , 0 uses Code tree
+        CODE("pairs", (vm, c) -> vm.io.pairs(vm, vm.ss.pop())      );   /// n -- , top n opcode pairs
+        CODE("jit",   (vm, c) -> {                                     /// n -- , JIT after n calls, 0 off
+            vm.hot = vm.ss.pop();
+            for (int i=vm.dict.fence; i < vm.dict.size(); i++) vm.dict.get(i).calls = 0;
+        });
+        CODE("see",   (vm, c) -> vm.io.see(vm.tick(), vm.base, 0)  );
+        CODE("profile-on",    (vm, c) -> Prof.of(vm).timed(vm, true)  );
+        CODE("profile-off",   (vm, c) -> Prof.of(vm).timed(vm, false) );
+        CODE("profile-reset", (vm, c) -> Prof.of(vm).reset()          );
+        CODE("profile-report",(vm, c) -> Prof.of(vm).report(vm)       );
+        CODE("stats", (vm, c) -> vm.io.pstr(vm.met.report(vm))    );
+        CODE("stats-every", (vm, c) -> vm.met.every(vm, vm.ss.pop()) );   /// ms -- , post as LOG, 0 off
+        CODE("trace-on",  (vm, c) -> {                                 /// n -- , ring of n events, 0: 4096
+            int n = vm.ss.pop();
+            vm.trc = new Trace(n > 0 ? n : 4096);
+        });
+        CODE("trace-off", (vm, c) -> vm.trc = null                 );
+        CODE("trace-dump",(vm, c) -> {
+            if (vm.trc != null) vm.trc.dump(vm);
+            else vm.io.pstr("trace-on first ");
+        });
+        CODE("flame-on",  (vm, c) -> {                                 /// us -- , sample every us, 0: 1ms
+            int us = vm.ss.pop();
+            Prof.of(vm).flame(vm, us > 0 ? us : 1000);
+        });
+        CODE("flame-off", (vm, c) -> Prof.of(vm).flame(vm, 0)      );
+        CODE("flame-dump",(vm, c) -> {                                 /// -- , flame-dump file
+            String fn = vm.io.next_token();
+            Prof   p  = Prof.of(vm);
+            if (p.fl == null) vm.io.pstr("flame-on first ");
+            else p.fl.dump(vm, fn);
+        });
+        CODE("depth", (vm, c) -> vm.ss.push(vm.ss.size())          );
+        CODE("r",     (vm, c) -> vm.ss.push(vm.rs.size())          );
+        CODE("forget", (vm, c) -> {
+            Code m = vm.dict.find("boot", vm.compile);
+            Code w = vm.tick(); if (w==null) return;
+            vm.dict.forget(max(w.token, m.token + 1));
+        });
+        CODE("boot",   (vm, c) -> {
+            int t = vm.dict.find("boot", vm.compile).token + 1;
+            vm.dict.forget(t);
         });
     }
 }
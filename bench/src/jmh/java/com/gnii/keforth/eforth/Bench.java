@@ -0,0 +1,29 @@
+///
+/// @file
+/// @brief - Bench class - headless VM setup shared by the JMH suite
+///
+package com.gnii.keforth.eforth;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+///
+///> benchmarks live in the eforth package to reach Dict, IO and VM internals
+///    mode: tree (Code tree), threaded (TC), jit (TC, then JIT after JIT.HOT calls)
+///
+class Bench {
+    static VM vm(String mode) {
+        Cache.dir(null);                            /// * time compiles, not cache replays
+        IO io = new IO("bench", InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        VM vm = new VM(io, (t, m) -> {});
+        vm.threaded = !mode.equals("tree");
+        vm.hot      = mode.equals("jit") ? JIT.HOT : 0;
+        return vm;
+    }
+    static void run(VM vm, byte[] src) {            ///< interpret src as if included
+        vm.io.load(new ByteArrayInputStream(src), vm::outer);
+    }
+    static void run(VM vm, String src) { run(vm, src.getBytes(StandardCharsets.UTF_8)); }
+}
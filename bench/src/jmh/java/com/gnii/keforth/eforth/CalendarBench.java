@@ -0,0 +1,36 @@
+///
+/// @file
+/// @brief - CalendarBench - full load of tests/11_calendar.fs on a fresh VM
+///
+package com.gnii.keforth.eforth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalendarBench {
+    @Param({"tree", "threaded"})
+    String mode;
+
+    byte[] src;
+    VM     vm;
+
+    @Setup(Level.Trial) public void read() throws IOException {
+        File f = new File(System.getProperty("keforth.tests", "../tests"), "11_calendar.fs");
+        src = Files.readAllBytes(f.toPath());
+    }
+    @Setup(Level.Invocation) public void fresh() { vm = Bench.vm(mode); }
+
+    @Benchmark public int load() {                  ///< compile the words, print may 2024
+        Bench.run(vm, src);
+        return vm.dict.size();
+    }
+}
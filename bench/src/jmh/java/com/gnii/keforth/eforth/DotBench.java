@@ -0,0 +1,33 @@
+///
+/// @file
+/// @brief - DotBench - number output through IO.dot
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DotBench {
+    VM   vm;
+    IO   io;
+    Code dots;
+    int  n = 0;
+
+    @Setup public void setup() {
+        vm   = Bench.vm("threaded");
+        io   = vm.io;
+        Bench.run(vm, ": dots ( -- ) 99 for i . next ;\n");
+        dots = vm.dict.find("dots", false);
+    }
+    @Benchmark public void dot()   { io.dot(IO.OP.DOT, n++ * 7919);     }
+    @Benchmark public void hex()   { io.dot(IO.OP.DOT, n++ * 7919, 0, 16); }
+    @Benchmark public void dotr()  { io.dot(IO.OP.DOTR, n++ & 0xffff, 8); }
+    @Benchmark @OperationsPerInvocation(100)
+    public void forth()            { vm.call(dots); }   ///< . from threaded code
+}
@@ -0,0 +1,37 @@
+///
+/// @file
+/// @brief - FindBench - Dict.find at several user dictionary sizes
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindBench {
+    @Param({"0", "256", "4096"})
+    int size;                                       ///< user words on top of the core
+
+    Dict   d;
+    String user, core = "dup", miss = "no-such-word";
+    char[] tib;                                     ///< user word as a token slice
+
+    @Setup public void setup() {
+        VM vm = Bench.vm("threaded");
+        StringBuilder s = new StringBuilder();
+        for (int i=0; i < size; i++) s.append(": w").append(i).append(" ;\n");
+        Bench.run(vm, s.toString());
+        d    = vm.dict;
+        user = size > 0 ? "w" + (size / 2) : "boot";
+        tib  = ("  " + user + "  ").toCharArray();
+    }
+    @Benchmark public Code user()  { return d.find(user, false); }
+    @Benchmark public Code core()  { return d.find(core, false); }
+    @Benchmark public Code miss()  { return d.find(miss, false); }
+    @Benchmark public Code slice() { return d.find(tib, 2, user.length(), false); }
+}
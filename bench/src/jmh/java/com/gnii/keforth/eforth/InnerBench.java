@@ -0,0 +1,50 @@
+///
+/// @file
+/// @brief - InnerBench - inner interpreter dispatch, per execution mode
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InnerBench {
+    static final String SRC =
+        ": fib ( n -- f ) 0 1 rot 0 do swap over + loop drop ;\n" +
+        ": loops ( -- ) 99 for 100 0 do i drop loop next ;\n" +
+        ": cnst create , does> @ ;\n" +
+        "7 cnst k\n" +
+        ": dk ( -- ) 999 for k drop next ;\n";
+
+    @Param({"tree", "threaded", "jit"})
+    String mode;
+
+    VM   vm;
+    Code fib, loops, dk;
+
+    @Setup public void setup() {
+        vm = Bench.vm(mode);
+        Bench.run(vm, SRC);
+        fib   = vm.dict.find("fib",   false);
+        loops = vm.dict.find("loops", false);
+        dk    = vm.dict.find("dk",    false);
+    }
+    @Benchmark public int fib() {                   ///< 30 fib, a do loop of stack ops
+        vm.ss.push(30);
+        vm.call(fib);
+        return vm.ss.pop();
+    }
+    @Benchmark public int loops() {                 ///< for/next around do/loop, 10000 passes
+        vm.call(loops);
+        return vm.ss.size();
+    }
+    @Benchmark public int does() {                  ///< 1000 calls of a does> word
+        vm.call(dk);
+        return vm.ss.size();
+    }
+}
@@ -0,0 +1,40 @@
+///
+/// @file
+/// @brief - OuterBench - outer interpreter throughput, in tokens/s
+///
+package com.gnii.keforth.eforth;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OuterBench {
+    static final int LINES  = 100;
+    static final int TOKENS = 12 * LINES;           ///< per invocation
+    static final String WORDS = "1 2 + drop 3 dup * drop 4 5 swap 2drop\n";
+    static final String NUMS  = "1 22 333 4444 -5 $ff %101 #9 2drop 2drop 2drop 2drop\n";
+
+    VM     vm;
+    byte[] words, nums;
+
+    @Setup public void setup() {
+        vm    = Bench.vm("threaded");
+        words = WORDS.repeat(LINES).getBytes();
+        nums  = NUMS.repeat(LINES).getBytes();
+    }
+    @Benchmark @OperationsPerInvocation(TOKENS)
+    public int words() {                            ///< dictionary words, stack balanced
+        Bench.run(vm, words);
+        return vm.ss.size();
+    }
+    @Benchmark @OperationsPerInvocation(TOKENS)
+    public int numbers() {                          ///< literals, with radix prefixes
+        Bench.run(vm, nums);
+        return vm.ss.size();
+    }
+}
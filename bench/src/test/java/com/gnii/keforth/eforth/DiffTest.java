@@ -0,0 +1,154 @@
+///
+/// @file
+/// @brief - DiffTest - threaded and JIT code against the Code tree, same script same result
+///
+package com.gnii.keforth.eforth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+///
+///> each script runs on a fresh VM per mode; the Code tree is the reference
+///    tree: Code tree only   threaded: TC, JIT off   jit: every colon word JIT
+///    compiled on its first call
+///  compared: everything printed (prompts show the stack line by line), host
+///  posts, final stack depth and error count; "n ms" timings are masked
+///
+class DiffTest {
+    static final String[] MODES = { "tree", "threaded", "jit" };
+
+    static VM vm(String mode, String src, ByteArrayOutputStream out, StringBuilder post) {
+        IO io = new IO("diff", new ByteArrayInputStream(src.getBytes(StandardCharsets.UTF_8)), out);
+        VM vm = new VM(io, (t, m) -> post.append(t).append(' ').append(m).append('\n'));
+        vm.threaded = !mode.equals("tree");
+        vm.hot      = mode.equals("jit") ? 1 : 0;
+        return vm;
+    }
+    static String run(String mode, String src) {
+        ByteArrayOutputStream out  = new ByteArrayOutputStream();
+        StringBuilder         post = new StringBuilder();
+        VM vm = vm(mode, src, out, post);
+        while (vm.io.readline()) {
+            if (!vm.outer()) break;
+        }
+        String s = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        return (s + "\n" + post + "depth " + vm.ss.size() + " errors " + vm.io.nerr)
+            .replaceAll("-?\\d+ ms", "# ms");
+    }
+    static void same(String src) {
+        String ref = run(MODES[0], src);
+        for (int i=1; i < MODES.length; i++) assertEquals(ref, run(MODES[i], src), MODES[i]);
+    }
+    ///
+    ///> every tests/*.fs (keforth.tests, set by the build)
+    ///
+    @TestFactory
+    Stream<DynamicTest> scripts() {
+        File   d  = new File(System.getProperty("keforth.tests", "../tests"));
+        File[] fs = d.listFiles((x, n) -> n.endsWith(".fs"));
+        if (fs == null) fs = new File[0];
+        Arrays.sort(fs);
+        return Arrays.stream(fs).map(f -> DynamicTest.dynamicTest(f.getName(), () -> {
+            try { same(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8)); }
+            catch (IOException e) { throw new AssertionError(f.toString(), e); }
+        }));
+    }
+    ///
+    ///> edge cases
+    ///
+    @Test void exitInNestedLoops() {
+        same(": e1 5 for 5 for i 2 = if exit then i . next .\" x\" next .\" never\" ; e1\n"
+           + ": e2 10 0 do i 5 = if i exit then loop 99 ; e2 .\n"
+           + ": e3 3 0 do 4 for i 1 = if 7 exit then next loop 8 ; e3 . e3 .\n"
+           + ": e4 e3 e2 + ; e4 .\n");
+    }
+    @Test void leaveInNestedLoops() {
+        same(": l1 3 0 do 10 0 do i 3 = if leave then i . loop .\" |\" loop ; l1\n"
+           + ": l2 4 for 10 0 do i 2 > if leave then i . loop i . next ; l2\n"
+           + ": l3 10 0 do i . 5 0 do i drop loop i 4 = if leave then loop ; l3\n"
+           + ": l4 3 0 do 10 0 do i 1 = if leave then loop i . loop ; l4\n");
+    }
+    @Test void doesWords() {
+        same(": cnt create , does> @ ; 7 cnt seven seven .\n"
+           + ": arr create cells allot does> + ; 5 arr a 3 a . 0 a .\n"
+           + ": use seven 2 * ; use .\n"
+           + ": many 10 for seven drop next ; many .s\n");
+    }
+    @Test void fusedPairs() {
+        same(": f1 dup * ; 7 f1 .\n"
+           + ": f2 over over + ; 3 4 f2 . . .\n"
+           + ": f3 5 + 10 * 3 - ; 2 f3 .\n"
+           + ": f4 1+ dup ; 1 f4 . .\n"
+           + ": f5 0= if 1 else 2 then ; 0 f5 . 5 f5 .\n"
+           + ": f6 >r r@ 2* r> drop ; 21 f6 .\n"
+           + ": f7 begin 1- dup 0= until ; 9 f7 .\n");
+    }
+    @Test void errorsMidWord() {
+        same(": bad 1 2 0 / 3 ; bad .s\n"
+           + ": bad2 10 0 do i 5 = if 1 0 / then loop ; bad2 .s\n"
+           + ": in 0 / ; : out 5 1 in 7 ; out .s\n"
+           + ": bad3 1 2 3 4 5 6 7 8 9 0 mod ; bad3 .s\n"
+           + ": after 3 0 do i . loop ; after .s\n"
+           + "nosuchword 1 2 + .\n");
+    }
+    ///
+    ///> JIT specifics: stack caching past KMAX, halt in compiled loops, deopt
+    ///
+    static final String DEEP =
+          ": deep 1 2 3 4 5 6 7 8 9 10 11 12 + + + + + + + + + + + ; deep .\n"
+        + ": wide 1 2 3 4 5 6 7 8 9 10 11 ; wide .s\n"
+        + ": mix 10 0 do 1 2 3 4 5 6 7 8 9 i + + + + + + + + + . loop ; mix\n"
+        + ": shuf 1 2 3 4 5 6 7 8 9 rot swap over >r -rot r> 2dup 2swap nip ; shuf .s\n"
+        + ": brn 1 2 3 4 5 6 7 8 9 10 dup 5 > if + + + else - - - then ; brn .s\n";
+
+    @Test void deepStack() {
+        same(DEEP);
+        VM vm = vm("jit", DEEP, new ByteArrayOutputStream(), new StringBuilder());
+        while (vm.io.readline()) vm.outer();
+        for (String w : new String[] { "deep", "wide", "mix", "shuf", "brn" }) {
+            assertNotNull(vm.dict.find(w, false).jit, w + " not JIT compiled");
+        }
+    }
+    @Test void deopt() {
+        same(": foo 1 ; : bar 2 ; : baz foo 10 * ; baz . ' bar is foo baz . foo .\n"
+           + ": sq dup * ; : use 3 sq ; use . : sq dup + ; use . 3 sq .\n"
+           + ": a1 5 ; : a2 a1 a1 + ; a2 . forget a1 : a1 7 ; a2 . : a3 a1 ; a3 .\n");
+    }
+    @Test void stopTask() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> same(
+              ": spin begin again ; : cnt 0 begin 1+ dup 0< until ;\n"
+            + "' spin task dup start 20 ms dup stop join .\" stopped\" cr\n"
+            + "' cnt task dup start 20 ms dup stop join .\" stopped\" cr\n"
+            + ": lp 0 1000000000 for 1+ next ; ' lp task dup start 20 ms dup stop join .\" stopped\"\n"));
+    }
+    @Test void haltInJitLoop() {
+        VM vm = vm("jit", ": w dup if begin again then drop ; 0 w\n",
+                   new ByteArrayOutputStream(), new StringBuilder());
+        while (vm.io.readline()) vm.outer();
+        Code w = vm.dict.find("w", false);
+        assertNotNull(w.jit, "w not JIT compiled");
+        new Thread(() -> {
+            try { Thread.sleep(50); } catch (InterruptedException e) { return; }
+            vm.halt = true;
+        }).start();
+        vm.ss.push(1);
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> assertThrows(Task.Stop.class, () -> vm.call(w)));
+    }
+}
@@ -0,0 +1,14 @@
+.( exit/leave micro-benchmark - early exits inside hot loops ) cr
+
+: early  ( n -- n' ) dup 1 and if exit then 1+ ;      ( exits on odd n )
+: leaver ( -- ) 100 0 do i 3 = if leave then loop ;   ( leaves at i=3  )
+: b-exit  ( n -- ms ) clock swap for i early drop next clock swap - ;
+: b-leave ( n -- ms ) clock swap for leaver next clock swap - ;
+: run ( -- )
+        ."   exit  x1M " 1000000 b-exit  . ." ms" cr
+        ."   leave x1M " 1000000 b-leave . ." ms" cr ;
+
+.( threaded code:) cr run run
+0 threaded
+.( Code tree:) cr run run
+-1 threaded